@@ -0,0 +1,51 @@
+package benchmarks;
+
+import db.MemoryDatabase;
+import org.openjdk.jmh.annotations.*;
+import services.DbAccountsService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link DbAccountsService#getAccountTransfers} for accounts with growing transfer history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AccountTransfersBenchmark {
+    private static final long ACC_ID = 1;
+    private static final long OTHER_ACC_ID = 2;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int historySize;
+
+    private MemoryDatabase db;
+    private DbAccountsService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new MemoryDatabase();
+        BenchmarkData.createTransfers(db, ACC_ID, OTHER_ACC_ID, historySize);
+
+        service = new DbAccountsService(db);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Benchmark
+    public Object getAccountTransfers() {
+        return service.getAccountTransfers(ACC_ID);
+    }
+
+    @Benchmark
+    public Object getAccountTransfersPage() {
+        return service.getAccountTransfers(ACC_ID, 0, PAGE_SIZE);
+    }
+}
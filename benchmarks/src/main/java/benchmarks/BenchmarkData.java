@@ -0,0 +1,77 @@
+package benchmarks;
+
+import db.MemoryDatabase;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+final class BenchmarkData {
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkData() {}
+
+    /**
+     * Creates accounts with ids {@code 4 .. 4 + count - 1} next to the three accounts of the bundled seed data.
+     */
+    static void createAccounts(MemoryDatabase db, int count, BigDecimal balance) {
+        db.ctx().connection(c -> {
+            try (PreparedStatement insert = c.prepareStatement("INSERT INTO ACCOUNT (NUMBER, BALANCE) VALUES (?, ?)")) {
+                for (int i = 0; i < count; i++) {
+                    insert.setString(1, "bench" + i);
+                    insert.setBigDecimal(2, balance);
+                    insert.addBatch();
+
+                    if ((i + 1) % BATCH_SIZE == 0)
+                        insert.executeBatch();
+                }
+
+                if (count % BATCH_SIZE != 0)
+                    insert.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Creates {@code count} transfers alternating between the two accounts along with their account history,
+     * balances are left untouched.
+     */
+    static void createTransfers(MemoryDatabase db, long accId, long otherAccId, int count) {
+        long now = System.currentTimeMillis();
+
+        db.ctx().connection(c -> {
+            long lastId;
+            try (Statement max = c.createStatement(); ResultSet rs = max.executeQuery("SELECT MAX(ID) FROM TRANSFER")) {
+                rs.next();
+                lastId = rs.getLong(1);
+            }
+
+            try (PreparedStatement insert = c.prepareStatement(
+                    "INSERT INTO TRANSFER (FROM_ACC, TO_ACC, AMOUNT, DATE) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < count; i++) {
+                    insert.setLong(1, i % 2 == 0 ? accId : otherAccId);
+                    insert.setLong(2, i % 2 == 0 ? otherAccId : accId);
+                    insert.setBigDecimal(3, BigDecimal.ONE);
+                    insert.setTimestamp(4, new Timestamp(now - count + i));
+                    insert.addBatch();
+
+                    if ((i + 1) % BATCH_SIZE == 0)
+                        insert.executeBatch();
+                }
+
+                if (count % BATCH_SIZE != 0)
+                    insert.executeBatch();
+            }
+
+            try (PreparedStatement history = c.prepareStatement("INSERT INTO ACCOUNT_HISTORY (ACCOUNT_ID, DATE, TRANSFER_ID) " +
+                    "SELECT FROM_ACC, DATE, ID FROM TRANSFER WHERE ID > ? UNION ALL " +
+                    "SELECT TO_ACC, DATE, ID FROM TRANSFER WHERE ID > ?")) {
+                history.setLong(1, lastId);
+                history.setLong(2, lastId);
+                history.executeUpdate();
+            }
+        });
+    }
+}
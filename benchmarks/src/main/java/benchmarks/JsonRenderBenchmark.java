@@ -0,0 +1,79 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import model.Account;
+import model.Transfer;
+import model.TransferRequest;
+import org.openjdk.jmh.annotations.*;
+import server.json.JsonCodec;
+import server.json.JsonTransformer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link JsonTransformer#render} for transfer lists, run with {@code -prof gc} to see allocation rates.
+ * {@code renderTransfersReflective} keeps the former per-request {@code new Gson()} rendering as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRenderBenchmark {
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private static final String TRANSFER_REQUEST = "{\"fromAcc\":1, \"toAcc\":2, \"amount\":100.50}";
+
+    private final JsonTransformer json = new JsonTransformer();
+
+    private List<Transfer> transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transfers = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            Transfer t = new Transfer();
+            t.fromAcc = new Account();
+            t.toAcc = new Account();
+
+            t.id = i + 1;
+            t.amount = BigDecimal.valueOf(10_000 + i, 2);
+            t.timestamp = new Date(1507460400000L + i * 1000L);
+
+            t.fromAcc.id = 1;
+            t.fromAcc.number = "acc1";
+
+            t.toAcc.id = 2;
+            t.toAcc.number = "acc2";
+
+            transfers.add(t);
+        }
+    }
+
+    @Benchmark
+    public String renderTransfers() {
+        return json.render(transfers);
+    }
+
+    @Benchmark
+    public String renderTransfersReflective() {
+        return new Gson().toJson(transfers);
+    }
+
+    @Benchmark
+    public TransferRequest parseTransferRequest() {
+        return JsonCodec.gson().fromJson(TRANSFER_REQUEST, TransferRequest.class);
+    }
+
+    @Benchmark
+    public TransferRequest parseTransferRequestReflective() {
+        return new Gson().fromJson(TRANSFER_REQUEST, TransferRequest.class);
+    }
+}
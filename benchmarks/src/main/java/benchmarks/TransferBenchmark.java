@@ -0,0 +1,96 @@
+package benchmarks;
+
+import db.DatabaseConfig;
+import db.MemoryDatabase;
+import model.TransferRequest;
+import org.openjdk.jmh.annotations.*;
+import services.BalanceStripes;
+import services.DbTransfersConfig;
+import services.DbTransfersService;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link DbTransfersService#transferAmount} for contention levels from transfers between uniformly
+ * random accounts to every transfer crediting one hot account.
+ *
+ * With {@code stripes} above zero the database runs with MVCC transaction control and the hot accounts have their
+ * balances striped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TransferBenchmark {
+    private static final long FIRST_ID = 4;
+    private static final int ACCOUNTS = 10_000;
+    private static final int HOT_ACCOUNTS = 10;
+
+    @Param({"uniform", "skewed", "hot"})
+    public String contention;
+
+    @Param({"FAST", "CLASSIC"})
+    public DbTransfersService.Mode mode;
+
+    @Param({"0", "8"})
+    public int stripes;
+
+    private MemoryDatabase db;
+    private DbTransfersService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DatabaseConfig config = new DatabaseConfig();
+        if (stripes > 0)
+            config.transactionControl = DatabaseConfig.TransactionControl.MVCC;
+
+        db = new MemoryDatabase(config);
+        BenchmarkData.createAccounts(db, ACCOUNTS, new BigDecimal("1000000000.00"));
+
+        BalanceStripes balanceStripes = BalanceStripes.load(db, stripes);
+        if (stripes > 0) {
+            for (int i = 0; i < HOT_ACCOUNTS; i++)
+                balanceStripes.stripe(db, FIRST_ID + i);
+        }
+
+        DbTransfersConfig transfersConfig = new DbTransfersConfig();
+        transfersConfig.mode = mode;
+        transfersConfig.stripes = balanceStripes;
+        service = new DbTransfersService(db, transfersConfig);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Benchmark
+    public Object transferAmount() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        TransferRequest trReq = new TransferRequest();
+        trReq.amount = 1;
+        trReq.fromAcc = FIRST_ID + random.nextInt(ACCOUNTS);
+
+        switch (contention) {
+            case "hot":
+                trReq.toAcc = FIRST_ID;
+                break;
+            case "skewed":
+                trReq.toAcc = FIRST_ID + random.nextInt(HOT_ACCOUNTS);
+                break;
+            default:
+                trReq.toAcc = FIRST_ID + random.nextInt(ACCOUNTS);
+        }
+
+        if (trReq.fromAcc == trReq.toAcc)
+            trReq.fromAcc = trReq.toAcc + 1;
+
+        return service.transferAmount(trReq);
+    }
+}
@@ -0,0 +1,70 @@
+package db;
+
+import metrics.Counter;
+import metrics.Metrics;
+import org.jooq.exception.DataAccessException;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs transactions rolled back by the database on a serialization conflict (SQL state 40001), waiting a random
+ * time of up to {@code backoffMillis * 2^attempt} before each of at most {@code maxRetries} retries.
+ */
+public class ConflictRetry {
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final Counter retries = Metrics.counter("db_conflict_retries");
+    private final Counter failures = Metrics.counter("db_conflict_failures");
+
+    private final int maxRetries;
+    private final long backoffMillis;
+
+    public ConflictRetry(int maxRetries, long backoffMillis) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+    }
+
+    public <T> T call(Supplier<T> transaction) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transaction.get();
+            } catch (DataAccessException e) {
+                if (!isConflict(e))
+                    throw e;
+
+                if (attempt >= maxRetries) {
+                    failures.inc();
+                    throw e;
+                }
+
+                retries.inc();
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private void backOff(int attempt, DataAccessException conflict) {
+        long bound = backoffMillis << Math.min(attempt, MAX_BACKOFF_SHIFT);
+        if (bound <= 0)
+            return;
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    static boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && SERIALIZATION_FAILURE.equals(((SQLException) cause).getSQLState()))
+                return true;
+        }
+
+        return false;
+    }
+}
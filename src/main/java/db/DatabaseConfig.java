@@ -0,0 +1,30 @@
+package db;
+
+public class DatabaseConfig {
+    /**
+     * {@link #LOCKS} locks whole tables for the duration of a transaction, {@link #MVCC} only locks the rows written.
+     */
+    public enum TransactionControl {
+        LOCKS, MVLOCKS, MVCC
+    }
+
+    public String url = "jdbc:hsqldb:res:/hsqldb/transfers";
+    /**
+     * Classpath resource of a {@link DatabaseImage} to create a new in-memory database from, {@link #url} is used
+     * when it is {@code null}.
+     */
+    public String image = "/hsqldb/transfers.image";
+
+    public int poolSize = 8;
+    public long acquireTimeoutMillis = 30_000;
+    /**
+     * Prepared statements kept per pooled connection, see {@link StatementCache}. When not positive, connections are
+     * closed on their return to the pool, and their statements with them.
+     */
+    public int statementCacheSize = 64;
+
+    public TransactionControl transactionControl = TransactionControl.LOCKS;
+
+    public int conflictRetries = 5;
+    public long conflictBackoffMillis = 1;
+}
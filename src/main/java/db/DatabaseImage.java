@@ -0,0 +1,330 @@
+package db;
+
+import org.jooq.DSLContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary image of the schema and the rows of a database, applied to a fresh in-memory database instead of parsing and
+ * running its SQL script.
+ *
+ * The image holds the DDL statements of the PUBLIC schema and the rows of its tables as typed values. Applying it runs
+ * a handful of statements and inserts the rows in JDBC batches, and {@link #restore} resets a database created from it
+ * back to the image without creating a new database.
+ *
+ * The image of the seed database is prebuilt in {@code /hsqldb/transfers.image}, regenerate it with
+ * {@code java db.DatabaseImage src/main/resources/hsqldb/transfers.image} after changing the script.
+ */
+public class DatabaseImage {
+    private static final int MAGIC = 0x48494d47;
+    private static final int VERSION = 1;
+
+    private static final String[] SCHEMA_STATEMENTS = {
+            "SET DATABASE SQL ", "SET DATABASE DEFAULT ", "SET DATABASE TRANSACTION ",
+            "CREATE MEMORY TABLE ", "CREATE SEQUENCE ", "CREATE INDEX ", "ALTER TABLE "};
+    private static final String TABLE_PREFIX = "CREATE MEMORY TABLE ";
+    private static final String IDENTITY_RESTART = " RESTART WITH ";
+
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte STRING = 3;
+    private static final byte DECIMAL = 4;
+    private static final byte TIMESTAMP = 5;
+
+    private static final ConcurrentMap<String, DatabaseImage> RESOURCES = new ConcurrentHashMap<>();
+    private static final AtomicLong DATABASES = new AtomicLong();
+
+    private final List<String> statements;
+    private final List<TableRows> tables;
+
+    private static class TableRows {
+        final String name;
+        final int columns;
+        final List<Object[]> rows;
+
+        TableRows(String name, int columns, List<Object[]> rows) {
+            this.name = name;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private DatabaseImage(List<String> statements, List<TableRows> tables) {
+        this.statements = statements;
+        this.tables = tables;
+    }
+
+    /**
+     * Returns the image of the classpath resource, it is read once per JVM.
+     */
+    public static DatabaseImage resource(String name) {
+        return RESOURCES.computeIfAbsent(name, n -> {
+            try (InputStream in = DatabaseImage.class.getResourceAsStream(n)) {
+                if (in == null)
+                    throw new IllegalArgumentException("No database image resource: " + n);
+
+                return read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public static DatabaseImage capture(MemoryDatabase db) {
+        List<String> statements = new ArrayList<>();
+        List<String> tableNames = new ArrayList<>();
+        for (String statement : db.ctx().fetch("SCRIPT").getValues(0, String.class)) {
+            for (String prefix : SCHEMA_STATEMENTS) {
+                if (statement.startsWith(prefix)) {
+                    statements.add(statement);
+                    break;
+                }
+            }
+
+            if (statement.startsWith(TABLE_PREFIX))
+                tableNames.add(statement.substring(TABLE_PREFIX.length(), statement.indexOf('(')));
+        }
+
+        List<TableRows> tables = new ArrayList<>();
+        db.ctx().connection(c -> {
+            try (Statement select = c.createStatement()) {
+                for (String table : tableNames) {
+                    try (ResultSet rs = select.executeQuery("SELECT * FROM " + table)) {
+                        int columns = rs.getMetaData().getColumnCount();
+                        List<Object[]> rows = new ArrayList<>();
+                        while (rs.next()) {
+                            Object[] row = new Object[columns];
+                            for (int i = 0; i < columns; i++)
+                                row[i] = rs.getObject(i + 1);
+
+                            rows.add(row);
+                        }
+
+                        tables.add(new TableRows(table, columns, rows));
+                    }
+                }
+            }
+        });
+
+        return new DatabaseImage(statements, tables);
+    }
+
+    /**
+     * URL of a new, empty in-memory database to apply an image to.
+     */
+    static String newDatabaseUrl() {
+        return "jdbc:hsqldb:mem:image-" + DATABASES.incrementAndGet();
+    }
+
+    /**
+     * Creates the schema and inserts the rows into an empty database.
+     */
+    void apply(DSLContext ctx) {
+        ctx.connection(c -> {
+            try (Statement ddl = c.createStatement()) {
+                for (String statement : statements)
+                    ddl.execute(statement);
+            }
+
+            insertRows(c);
+        });
+    }
+
+    /**
+     * Resets a database created from this image to its rows and identity counters, in a fraction of the time taken
+     * to create a new database.
+     */
+    public void restore(MemoryDatabase db) {
+        db.ctx().connection(c -> {
+            try (Statement statement = c.createStatement()) {
+                statement.execute("TRUNCATE SCHEMA PUBLIC RESTART IDENTITY AND COMMIT NO CHECK");
+            }
+
+            insertRows(c);
+
+            try (Statement statement = c.createStatement()) {
+                for (String restart : statements) {
+                    if (restart.contains(IDENTITY_RESTART))
+                        statement.execute(restart);
+                }
+            }
+        });
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        data.writeInt(statements.size());
+        for (String statement : statements)
+            data.writeUTF(statement);
+
+        data.writeInt(tables.size());
+        for (TableRows table : tables) {
+            data.writeUTF(table.name);
+            data.writeInt(table.columns);
+            data.writeInt(table.rows.size());
+
+            for (Object[] row : table.rows) {
+                for (Object value : row)
+                    writeValue(data, value);
+            }
+        }
+
+        data.flush();
+    }
+
+    public static DatabaseImage read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC || data.readInt() != VERSION)
+            throw new IOException("Not a database image of version " + VERSION);
+
+        int statementsCount = data.readInt();
+        List<String> statements = new ArrayList<>(statementsCount);
+        for (int i = 0; i < statementsCount; i++)
+            statements.add(data.readUTF());
+
+        int tablesCount = data.readInt();
+        List<TableRows> tables = new ArrayList<>(tablesCount);
+        for (int i = 0; i < tablesCount; i++) {
+            String name = data.readUTF();
+            int columns = data.readInt();
+            int rowsCount = data.readInt();
+
+            List<Object[]> rows = new ArrayList<>(rowsCount);
+            for (int r = 0; r < rowsCount; r++) {
+                Object[] row = new Object[columns];
+                for (int col = 0; col < columns; col++)
+                    row[col] = readValue(data);
+
+                rows.add(row);
+            }
+
+            tables.add(new TableRows(name, columns, Collections.unmodifiableList(rows)));
+        }
+
+        return new DatabaseImage(Collections.unmodifiableList(statements), Collections.unmodifiableList(tables));
+    }
+
+    private void insertRows(Connection c) throws SQLException {
+        for (TableRows table : tables) {
+            if (table.rows.isEmpty())
+                continue;
+
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.name).append(" VALUES (");
+            for (int i = 0; i < table.columns; i++)
+                sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+
+            try (PreparedStatement insert = c.prepareStatement(sql.toString())) {
+                for (Object[] row : table.rows) {
+                    for (int i = 0; i < row.length; i++)
+                        insert.setObject(i + 1, row[i]);
+
+                    insert.addBatch();
+                }
+
+                insert.executeBatch();
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream data, Object value) throws IOException {
+        if (value == null) {
+            data.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            data.writeByte(INT);
+            data.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            data.writeByte(LONG);
+            data.writeLong((Long) value);
+        } else if (value instanceof String) {
+            data.writeByte(STRING);
+            data.writeUTF((String) value);
+        } else if (value instanceof BigDecimal) {
+            byte[] unscaled = ((BigDecimal) value).unscaledValue().toByteArray();
+            //Lengths are written in a byte
+            if (unscaled.length > 255)
+                throw new IllegalArgumentException("Decimal value of " + unscaled.length + " bytes is too long");
+
+            data.writeByte(DECIMAL);
+            data.writeInt(((BigDecimal) value).scale());
+            data.writeByte(unscaled.length);
+            data.write(unscaled);
+        } else if (value instanceof Timestamp) {
+            //Columns without a time zone keep their local date and time whatever the zone of the JVM
+            LocalDateTime local = ((Timestamp) value).toLocalDateTime();
+
+            data.writeByte(TIMESTAMP);
+            data.writeLong(local.toEpochSecond(ZoneOffset.UTC));
+            data.writeInt(local.getNano());
+        } else {
+            throw new IllegalArgumentException("Unsupported column value: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream data) throws IOException {
+        byte type = data.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case INT:
+                return data.readInt();
+            case LONG:
+                return data.readLong();
+            case STRING:
+                return data.readUTF();
+            case DECIMAL:
+                int scale = data.readInt();
+                byte[] unscaled = new byte[data.readUnsignedByte()];
+                data.readFully(unscaled);
+
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            case TIMESTAMP:
+                return Timestamp.valueOf(LocalDateTime.ofEpochSecond(data.readLong(), data.readInt(), ZoneOffset.UTC));
+            default:
+                throw new IOException("Unknown column value type: " + type);
+        }
+    }
+
+    /**
+     * Writes the image of the database opened from the SQL script to the file given as the only argument.
+     */
+    public static void main(String[] args) throws IOException {
+        DatabaseConfig config = new DatabaseConfig();
+        config.image = null;
+
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[0]))) {
+            capture(new MemoryDatabase(config)).write(out);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package db;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Data source handing out at most {@code poolSize} connections of the underlying pool at a time.
+ *
+ * Callers wait up to the acquire timeout for a connection to be returned, the wait time is recorded in the
+ * {@code db_pool_acquire_wait_micros} histogram and expired waits are counted by {@code db_pool_acquire_timeouts}.
+ *
+ * With a positive {@code statementCacheSize}, returned connections are kept open for the next callers, rolled back if
+ * left in a transaction, with their {@link StatementCache}. Otherwise they are closed and given back to the underlying
+ * pool.
+ */
+public class InstrumentedDataSource implements DataSource {
+    private final Histogram acquireWait = Metrics.histogram("db_pool_acquire_wait_micros");
+    private final Counter acquireTimeouts = Metrics.counter("db_pool_acquire_timeouts");
+    private final Counter prepared = Metrics.counter("db_statements_prepared");
+
+    private final DataSource pool;
+    private final int poolSize;
+    private final long acquireTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<StatementCache> idle = new ConcurrentLinkedDeque<>();
+
+    public InstrumentedDataSource(DataSource pool, int poolSize, long acquireTimeoutMillis) {
+        this(pool, poolSize, acquireTimeoutMillis, 0);
+    }
+
+    public InstrumentedDataSource(DataSource pool, int poolSize, long acquireTimeoutMillis, int statementCacheSize) {
+        this.pool = pool;
+        this.poolSize = poolSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        permits = new Semaphore(poolSize, true);
+
+        Metrics.gauge("db_pool_active_connections", this::activeConnections);
+        Metrics.gauge("db_pool_idle_connections", this::idleConnections);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long started = System.nanoTime();
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        } finally {
+            acquireWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        }
+
+        if (!acquired) {
+            acquireTimeouts.inc();
+            throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis +
+                    " ms waiting for a connection");
+        }
+
+        try {
+            StatementCache kept = idle.pollFirst();
+
+            return releasing(kept != null ? kept : new StatementCache(pool.getConnection(), statementCacheSize));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections are only handed out for the configured user");
+    }
+
+    public int activeConnections() {
+        return poolSize - permits.availablePermits();
+    }
+
+    /**
+     * Connections returned and kept open for the next callers, only kept with a statement cache.
+     */
+    public int idleConnections() {
+        return idle.size();
+    }
+
+    private Connection releasing(StatementCache statements) {
+        Connection connection = statements.connection();
+        AtomicBoolean released = new AtomicBoolean();
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (released.compareAndSet(false, true)) {
+                                try {
+                                    release(statements);
+                                } finally {
+                                    permits.release();
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            return released.get() || connection.isClosed();
+                        case "unwrap":
+                            if (args[0] == StatementCache.class)
+                                return statements;
+                            break;
+                        case "isWrapperFor":
+                            if (args[0] == StatementCache.class)
+                                return true;
+                            break;
+                        case "prepareStatement":
+                        case "prepareCall":
+                            prepared.inc();
+                            break;
+                    }
+
+                    //The connection may be handed out again since
+                    if (released.get())
+                        throw new SQLNonTransientConnectionException("Connection is closed");
+
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private void release(StatementCache statements) throws SQLException {
+        Connection connection = statements.connection();
+        if (statementCacheSize <= 0 || connection.isClosed()) {
+            statements.close();
+            return;
+        }
+
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            statements.close();
+            throw e;
+        }
+
+        idle.offerFirst(statements);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return pool.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : pool.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || pool.isWrapperFor(iface);
+    }
+}
@@ -1,23 +1,62 @@
 package db;
 
+import metrics.Counter;
+import metrics.Metrics;
 import org.hsqldb.jdbc.JDBCPool;
 import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
 import org.jooq.SQLDialect;
+import org.jooq.TransactionalCallable;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListener;
 
 public class MemoryDatabase {
-    private static final String DEFAULT_URL = "jdbc:hsqldb:res:/hsqldb/transfers";
-
     private final DSLContext dslContext;
+    private final ConflictRetry conflictRetry;
 
     public MemoryDatabase() {
-        JDBCPool pool = new JDBCPool();
-        pool.setUrl(DEFAULT_URL);
+        this(new DatabaseConfig());
+    }
+
+    public MemoryDatabase(DatabaseConfig config) {
+        JDBCPool pool = new JDBCPool(config.poolSize);
+        pool.setUrl(config.image == null ? config.url : DatabaseImage.newDatabaseUrl());
 
-        dslContext = DSL.using(pool, SQLDialect.HSQLDB);
+        dslContext = DSL.using(new DefaultConfiguration()
+                .set(new InstrumentedDataSource(pool, config.poolSize, config.acquireTimeoutMillis,
+                        config.statementCacheSize))
+                .set(SQLDialect.HSQLDB)
+                .set(new RenderCounter()));
+        if (config.image != null)
+            DatabaseImage.resource(config.image).apply(dslContext);
+        dslContext.execute("SET DATABASE TRANSACTION CONTROL " + config.transactionControl.name());
+
+        conflictRetry = new ConflictRetry(config.conflictRetries, config.conflictBackoffMillis);
     }
 
     public DSLContext ctx() {
         return dslContext;
     }
+
+    /**
+     * Runs the transaction, running it again if it is rolled back on a conflict with a concurrent transaction.
+     */
+    public <T> T retryingTransactionResult(TransactionalCallable<T> transaction) {
+        return conflictRetry.call(() -> ctx().transactionResult(transaction));
+    }
+
+    /**
+     * Counts the queries jOOQ renders to execute them in {@code db_queries_rendered}, with the {@link RenderedQuery}s.
+     */
+    private static class RenderCounter extends DefaultExecuteListener {
+        private static final long serialVersionUID = 1L;
+
+        private final Counter rendered = Metrics.counter("db_queries_rendered");
+
+        @Override
+        public void renderEnd(ExecuteContext ctx) {
+            rendered.inc();
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package db;
+
+import metrics.Counter;
+import metrics.Metrics;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Query rendered to SQL once and executed as a statement of the {@link StatementCache} of the connection, so executing
+ * it only binds its parameters. Parameters are bound by position, in the order their placeholders appear in the query.
+ *
+ * Renders are counted in {@code db_queries_rendered}, along with the renders of the queries jOOQ executes.
+ */
+public class RenderedQuery {
+    private static final Counter rendered = Metrics.counter("db_queries_rendered");
+
+    private final String sql;
+    private final String[] generatedColumns;
+
+    /**
+     * @param returning columns of the inserted rows to read back from {@link PreparedStatement#getGeneratedKeys()}
+     */
+    public RenderedQuery(DSLContext ctx, Query query, Field<?>... returning) {
+        sql = ctx.render(query);
+        rendered.inc();
+
+        generatedColumns = new String[returning.length];
+        for (int i = 0; i < returning.length; i++)
+            generatedColumns[i] = returning[i].getName();
+    }
+
+    /**
+     * Query written as SQL.
+     */
+    public RenderedQuery(String sql, String... generatedColumns) {
+        this.sql = sql;
+        this.generatedColumns = generatedColumns;
+    }
+
+    public String sql() {
+        return sql;
+    }
+
+    /**
+     * Runs the callback with the statement of the query on the connection of the context. SQL errors are thrown as
+     * {@link DataAccessException}s, as by queries executed by jOOQ.
+     */
+    public <T> T execute(DSLContext ctx, StatementCallable<T> callable) {
+        Configuration configuration = ctx.configuration();
+        Connection connection = configuration.connectionProvider().acquire();
+        try {
+            return callable.call(connection.unwrap(StatementCache.class).prepare(sql, generatedColumns));
+        } catch (SQLException e) {
+            throw new DataAccessException("SQL [" + sql + "]; " + e.getMessage(), e);
+        } finally {
+            configuration.connectionProvider().release(connection);
+        }
+    }
+
+    @FunctionalInterface
+    public interface StatementCallable<T> {
+        T call(PreparedStatement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,84 @@
+package db;
+
+import metrics.Counter;
+import metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of a pooled connection, kept open while the connection goes back and forth to the pool, so
+ * fixed queries are only bound and executed once their connection has prepared them. Up to {@code size} statements are
+ * kept, the least recently used ones are closed beyond it. With a non-positive size statements are kept until the
+ * connection is closed on its return to the pool.
+ *
+ * The cache of a connection handed out by {@link InstrumentedDataSource} is obtained with
+ * {@code connection.unwrap(StatementCache.class)}. Statements are prepared in {@code db_statements_prepared}, also
+ * counting the statements prepared directly on the connection.
+ *
+ * Not thread safe, the cache is used by the holder of its connection.
+ */
+public class StatementCache {
+    private final Counter prepared = Metrics.counter("db_statements_prepared");
+
+    private final Connection connection;
+    private final int size;
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection connection, int size) {
+        this.connection = connection;
+        this.size = size;
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * Returns the statement of the SQL, prepared to return the generated columns if any are given. Callers bind all
+     * parameters of the statement, close the result sets they open and never close the statement.
+     */
+    public PreparedStatement prepare(String sql, String... generatedColumns) throws SQLException {
+        String key = generatedColumns.length == 0 ? sql : sql + Arrays.toString(generatedColumns);
+
+        PreparedStatement statement = statements.get(key);
+        if (statement != null && !statement.isClosed())
+            return statement;
+
+        prepared.inc();
+        statement = generatedColumns.length == 0 ? connection.prepareStatement(sql) :
+                connection.prepareStatement(sql, generatedColumns);
+        statements.put(key, statement);
+
+        if (size > 0 && statements.size() > size) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            PreparedStatement evicted = eldest.next();
+            eldest.remove();
+            evicted.close();
+        }
+
+        return statement;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes the statements and the connection.
+     */
+    void close() throws SQLException {
+        try {
+            for (PreparedStatement statement : statements.values())
+                statement.close();
+        } finally {
+            statements.clear();
+            connection.close();
+        }
+    }
+}
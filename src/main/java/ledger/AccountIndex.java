@@ -0,0 +1,188 @@
+package ledger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open addressing hash table of accounts by id held in direct buffers, so millions of accounts cost the garbage
+ * collector a few hundred buffers instead of millions of objects.
+ *
+ * A slot holds the id, the balance in cents and the position of the account number, which is stored once, as UTF-8
+ * bytes prefixed with their length, in append-only number pages. Ids are found by linear probing from a mixed hash,
+ * id 0 marks a free slot, and the table doubles once half full. Slots are split over pages, so the table is not limited
+ * by the 2GB of a single buffer.
+ *
+ * Not thread safe, the index is owned by its shard thread.
+ */
+class AccountIndex {
+    private static final int SLOT_SIZE = 24;
+    private static final int BALANCE = 8;
+    private static final int NUMBER = 16;
+
+    private static final int PAGE_SLOTS_BITS = 16;
+    private static final int PAGE_SLOTS = 1 << PAGE_SLOTS_BITS;
+    private static final int NUMBER_PAGE_BITS = 20;
+    private static final int NUMBER_PAGE_SIZE = 1 << NUMBER_PAGE_BITS;
+    //Lengths are stored as unsigned shorts
+    private static final int MAX_NUMBER_LENGTH = 0xffff;
+
+    private ByteBuffer[] pages;
+    private long mask;
+    private int size;
+
+    private final List<ByteBuffer> numberPages = new ArrayList<>();
+
+    AccountIndex() {
+        this(1024);
+    }
+
+    AccountIndex(int initialCapacity) {
+        long capacity = Long.highestOneBit(Math.max(initialCapacity, 2) - 1) << 1;
+        pages = allocate(capacity);
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the account, or -1 if there is none.
+     */
+    long find(long id) {
+        for (long slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            long slotId = id(slot);
+            if (slotId == id)
+                return slot;
+            if (slotId == 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Adds the account, or replaces the number and balance of an account with the same id, and returns its slot.
+     */
+    long put(long id, String number, long balance) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Account id: " + id + " must be positive");
+
+        byte[] bytes = number.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NUMBER_LENGTH)
+            throw new IllegalArgumentException("Account number of " + bytes.length + " bytes is too long");
+
+        if (2L * (size + 1) > mask + 1)
+            grow();
+
+        long slot = hash(id) & mask;
+        while (id(slot) != 0 && id(slot) != id)
+            slot = (slot + 1) & mask;
+
+        long position;
+        if (id(slot) == 0) {
+            size++;
+            position = appendNumber(bytes);
+        } else {
+            //A replaced number is left behind in its page
+            position = number(slot).equals(number) ? page(slot).getLong(offset(slot) + NUMBER) : appendNumber(bytes);
+        }
+
+        write(slot, id, balance, position);
+
+        return slot;
+    }
+
+    long id(long slot) {
+        return page(slot).getLong(offset(slot));
+    }
+
+    long balance(long slot) {
+        return page(slot).getLong(offset(slot) + BALANCE);
+    }
+
+    void balance(long slot, long balance) {
+        page(slot).putLong(offset(slot) + BALANCE, balance);
+    }
+
+    String number(long slot) {
+        long position = page(slot).getLong(offset(slot) + NUMBER);
+        ByteBuffer page = numberPages.get((int) (position >>> NUMBER_PAGE_BITS));
+        int offset = (int) (position & (NUMBER_PAGE_SIZE - 1));
+
+        byte[] bytes = new byte[page.getShort(offset) & 0xffff];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = page.get(offset + 2 + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long appendNumber(byte[] bytes) {
+        ByteBuffer page = numberPages.isEmpty() ? null : numberPages.get(numberPages.size() - 1);
+        if (page == null || page.remaining() < bytes.length + 2) {
+            page = ByteBuffer.allocateDirect(NUMBER_PAGE_SIZE).order(ByteOrder.nativeOrder());
+            numberPages.add(page);
+        }
+
+        long position = ((long) (numberPages.size() - 1) << NUMBER_PAGE_BITS) + page.position();
+        page.putShort((short) bytes.length).put(bytes);
+
+        return position;
+    }
+
+    private void grow() {
+        ByteBuffer[] old = pages;
+        long oldCapacity = mask + 1;
+
+        pages = allocate(2 * oldCapacity);
+        mask = 2 * oldCapacity - 1;
+
+        for (long oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            ByteBuffer oldPage = old[(int) (oldSlot >>> PAGE_SLOTS_BITS)];
+            int oldOffset = offset(oldSlot);
+
+            long id = oldPage.getLong(oldOffset);
+            if (id == 0)
+                continue;
+
+            long slot = hash(id) & mask;
+            while (id(slot) != 0)
+                slot = (slot + 1) & mask;
+
+            write(slot, id, oldPage.getLong(oldOffset + BALANCE), oldPage.getLong(oldOffset + NUMBER));
+        }
+    }
+
+    private void write(long slot, long id, long balance, long number) {
+        ByteBuffer page = page(slot);
+        int offset = offset(slot);
+
+        page.putLong(offset, id);
+        page.putLong(offset + BALANCE, balance);
+        page.putLong(offset + NUMBER, number);
+    }
+
+    private ByteBuffer page(long slot) {
+        return pages[(int) (slot >>> PAGE_SLOTS_BITS)];
+    }
+
+    private static int offset(long slot) {
+        return (int) (slot & (PAGE_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    private static ByteBuffer[] allocate(long capacity) {
+        int pageSlots = (int) Math.min(capacity, PAGE_SLOTS);
+        ByteBuffer[] pages = new ByteBuffer[(int) ((capacity + pageSlots - 1) / pageSlots)];
+        for (int i = 0; i < pages.length; i++)
+            pages[i] = ByteBuffer.allocateDirect(pageSlots * SLOT_SIZE).order(ByteOrder.nativeOrder());
+
+        return pages;
+    }
+
+    private static long hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+
+        return h ^ (h >>> 32);
+    }
+}
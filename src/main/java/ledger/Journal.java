@@ -0,0 +1,318 @@
+package ledger;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records in memory-mapped segment files named after the journal position they start at.
+ *
+ * A record is its length, the CRC32 of its bytes and the bytes, a zero length marks the end of the written part of a
+ * segment. Appends only copy the record into the mapped segment. A single syncer thread forces the segments to disk
+ * and {@link #awaitDurable} waits for it, so concurrent appenders share one fsync. Once forcing the segments fails the
+ * journal is failed: waiters for records not forced yet and later appends throw, as the records may be lost.
+ */
+class Journal implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+
+    private final Counter fsyncs = Metrics.counter("ledger_journal_fsyncs");
+    private final Histogram fsyncMicros = Metrics.histogram("ledger_journal_fsync_micros");
+
+    private final Path dir;
+    private final int segmentSize;
+
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private MappedByteBuffer segment;
+    private long segmentStart;
+
+    private long written;
+    private long synced;
+    private final List<MappedByteBuffer> unsynced = new ArrayList<>();
+
+    private final Thread syncer;
+    private volatile boolean closed;
+    private RuntimeException failure;
+
+    Journal(Path dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+
+        try {
+            Files.createDirectories(dir);
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files)
+                    segments.put(segmentStart(file), file);
+            }
+
+            if (segments.isEmpty()) {
+                openSegment(0);
+            } else {
+                segmentStart = segments.lastKey();
+                segment = map(segments.lastEntry().getValue());
+
+                //A record torn by a crash is cut off here and overwritten by the next appends
+                int end = scan(segment, null);
+                for (int i = end; i < segment.capacity(); i++) {
+                    if (segment.get(i) != 0)
+                        segment.put(i, (byte) 0);
+                }
+                segment.position(end);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        written = segmentStart + segment.position();
+        synced = written;
+
+        syncer = new Thread(this::syncLoop, "ledger-journal-syncer");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Position following the last appended record.
+     */
+    synchronized long position() {
+        return written;
+    }
+
+    /**
+     * Appends the record and returns the position following it, the record is durable once
+     * {@link #awaitDurable} of that position returns.
+     */
+    synchronized long append(byte[] record) {
+        if (closed)
+            throw new IllegalStateException("Journal is closed");
+        if (failure != null)
+            throw failed();
+
+        if (HEADER_SIZE + record.length + HEADER_SIZE > segmentSize)
+            throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a journal segment");
+
+        if (segment.remaining() < HEADER_SIZE + record.length + HEADER_SIZE)
+            openSegment(written);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        segment.putInt(record.length);
+        segment.putInt((int) crc.getValue());
+        segment.put(record);
+
+        written = segmentStart + segment.position();
+
+        if (unsynced.isEmpty() || unsynced.get(unsynced.size() - 1) != segment)
+            unsynced.add(segment);
+        notifyAll();
+
+        return written;
+    }
+
+    synchronized void awaitDurable(long position) {
+        try {
+            //The syncer catches up with all appended records before it stops, unless it fails
+            while (synced < position) {
+                if (failure != null)
+                    throw failed();
+
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+
+    /**
+     * Position of the first record still kept.
+     */
+    synchronized long start() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Deletes the segments holding only records before {@code position}, which are never replayed again. The segment
+     * appended to is kept, as are the segments not forced to disk yet.
+     */
+    synchronized void deleteBefore(long position) {
+        long limit = Math.min(position, Math.min(synced, segmentStart));
+
+        try {
+            while (segments.size() > 1) {
+                Long next = segments.higherKey(segments.firstKey());
+                if (next > limit)
+                    break;
+
+                Files.deleteIfExists(segments.pollFirstEntry().getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Passes the records starting at {@code from}, which must be a record boundary, to {@code action}.
+     */
+    synchronized void replay(long from, Consumer<ByteBuffer> action) {
+        Long first = segments.floorKey(from);
+        if (first == null)
+            first = segments.firstKey();
+
+        try {
+            for (Path file : segments.tailMap(first, true).values()) {
+                long start = segmentStart(file);
+                ByteBuffer buffer = start == segmentStart ? segment.duplicate() : map(file);
+
+                buffer.position((int) Math.max(0, from - start));
+                scan(buffer, action);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        segment.force();
+    }
+
+    private void syncLoop() {
+        while (true) {
+            long target;
+            List<MappedByteBuffer> buffers;
+
+            synchronized (this) {
+                while (!closed && written == synced) {
+                    //Interrupts are ignored, the syncer stops once the journal is closed
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+
+                if (written == synced)
+                    return;
+
+                target = written;
+                buffers = new ArrayList<>(unsynced);
+                unsynced.clear();
+            }
+
+            long started = System.nanoTime();
+            try {
+                for (MappedByteBuffer buffer : buffers)
+                    buffer.force();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+
+                return;
+            }
+
+            fsyncs.inc();
+            fsyncMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+
+            synchronized (this) {
+                synced = target;
+                notifyAll();
+            }
+        }
+    }
+
+    private IllegalStateException failed() {
+        return new IllegalStateException("Journal failed to force records to disk", failure);
+    }
+
+    private void openSegment(long start) {
+        Path file = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+
+        try {
+            segment = map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        segmentStart = start;
+        segments.put(start, file);
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            //Segments written with another segment size keep theirs
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentSize));
+        }
+    }
+
+    /**
+     * Reads the valid records from the position of the buffer on and returns the offset following the last one.
+     */
+    private static int scan(ByteBuffer buffer, Consumer<ByteBuffer> action) {
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            if (action != null)
+                action.accept(record);
+
+            buffer.position(start + HEADER_SIZE + length);
+        }
+
+        return buffer.position();
+    }
+
+    private static long segmentStart(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,157 @@
+package ledger;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Partition of the ledger owning a subset of accounts.
+ *
+ * All state is confined to the single shard thread, so operations submitted via {@link #call(Function)} are applied
+ * one after another without any locking. Accounts live off the heap in an {@link AccountIndex} with their balances in
+ * cents, {@link AccountState}s are only materialized for reads.
+ */
+class LedgerShard implements AutoCloseable {
+    private final ExecutorService executor;
+
+    private final AccountIndex accounts = new AccountIndex();
+
+    //Ids of the accounts in the order they were added, sorted on demand by ordered scans
+    private long[] ids = new long[64];
+    private int idsCount;
+    private boolean idsSorted = true;
+
+    private final Map<Long, List<Long>> transfers = new HashMap<>();
+
+    LedgerShard(int index) {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ledger-shard-" + index);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    <T> CompletableFuture<T> call(Function<LedgerShard, T> operation) {
+        return CompletableFuture.supplyAsync(() -> operation.apply(this), executor);
+    }
+
+    boolean exists(long accId) {
+        return accounts.find(accId) >= 0;
+    }
+
+    /**
+     * Returns the account, or {@code null} if there is none.
+     */
+    AccountState account(long accId) {
+        long slot = accounts.find(accId);
+
+        return slot < 0 ? null : state(slot);
+    }
+
+    /**
+     * Returns the number of the account, or {@code null} if there is none.
+     */
+    String number(long accId) {
+        long slot = accounts.find(accId);
+
+        return slot < 0 ? null : accounts.number(slot);
+    }
+
+    List<AccountState> accounts() {
+        return accountsAfter(Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    List<AccountState> accountsAfter(long after, int limit) {
+        if (!idsSorted) {
+            Arrays.sort(ids, 0, idsCount);
+            idsSorted = true;
+        }
+
+        int from = Arrays.binarySearch(ids, 0, idsCount, after);
+        from = from < 0 ? -from - 1 : from + 1;
+        int to = (int) Math.min(idsCount, (long) from + limit);
+
+        List<AccountState> page = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++)
+            page.add(state(accounts.find(ids[i])));
+
+        return page;
+    }
+
+    void put(AccountState acc) {
+        put(acc.id, acc.number, LedgerStore.unscaled(acc.balance));
+    }
+
+    void put(long accId, String number, long balance) {
+        int size = accounts.size();
+        accounts.put(accId, number, balance);
+        if (accounts.size() == size)
+            return;
+
+        if (idsCount == ids.length)
+            ids = Arrays.copyOf(ids, 2 * idsCount);
+        if (idsCount > 0 && ids[idsCount - 1] > accId)
+            idsSorted = false;
+
+        ids[idsCount++] = accId;
+    }
+
+    /**
+     * Takes the amount in cents from the account, unless its balance is lower.
+     */
+    boolean debit(long accId, long amount) {
+        long slot = accounts.find(accId);
+        long balance = accounts.balance(slot);
+        if (balance < amount)
+            return false;
+
+        accounts.balance(slot, balance - amount);
+
+        return true;
+    }
+
+    /**
+     * Adds the amount in cents to the account, whatever the resulting balance.
+     */
+    void add(long accId, long amount) {
+        long slot = accounts.find(accId);
+        accounts.balance(slot, Math.addExact(accounts.balance(slot), amount));
+    }
+
+    List<Long> transfers(long accId) {
+        return transfers.getOrDefault(accId, Collections.emptyList());
+    }
+
+    void addTransfer(long accId, long transferId) {
+        transfers.computeIfAbsent(accId, id -> new ArrayList<>()).add(transferId);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private AccountState state(long slot) {
+        return new AccountState(accounts.id(slot), accounts.number(slot), LedgerStore.money(accounts.balance(slot)));
+    }
+
+    static class AccountState {
+        final long id;
+        final String number;
+        final BigDecimal balance;
+
+        AccountState(long id, String number, BigDecimal balance) {
+            this.id = id;
+            this.number = number;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package ledger;
+
+import ledger.LedgerShard.AccountState;
+import model.Account;
+import model.Transfer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable state of a {@link ShardedLedger} in a directory: a {@link Journal} of created accounts and made transfers,
+ * and snapshots of the account balances, each covering the journal up to its position.
+ *
+ * Money is stored as unscaled longs of scale 2, strings as UTF-8 bytes prefixed with their length.
+ */
+class LedgerStore implements AutoCloseable {
+    private static final byte ACCOUNT_EVENT = 1;
+    private static final byte TRANSFER_EVENT = 2;
+
+    private static final int SNAPSHOT_MAGIC = 0x4c534e50;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private static final int MONEY_SCALE = 2;
+
+    private final Path dir;
+    private final Journal journal;
+
+    interface Events {
+        void account(long id, String number, BigDecimal balance);
+
+        void transfer(Transfer t, String idempotencyKey);
+    }
+
+    /**
+     * Ledger state as of a journal position: balances of all accounts, the id counters and the transfers of the
+     * idempotency keys not expired yet, so that retries of these keys are still answered after a restart.
+     */
+    static class Snapshot {
+        long position;
+        long accountIds;
+        long transferIds;
+        List<AccountState> accounts = new ArrayList<>();
+        Map<String, Transfer> keyedTransfers = new LinkedHashMap<>();
+    }
+
+    LedgerStore(Path dir, int segmentSize) {
+        this.dir = dir;
+        this.journal = new Journal(dir, segmentSize);
+    }
+
+    long position() {
+        return journal.position();
+    }
+
+    /**
+     * Position of the first journaled event still kept, events before it are covered by every kept snapshot.
+     */
+    long journalStart() {
+        return journal.start();
+    }
+
+    long appendAccount(long id, String number, BigDecimal balance) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCOUNT_EVENT);
+            out.writeLong(id);
+            writeString(out, number);
+            out.writeLong(unscaled(balance));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return journal.append(bytes.toByteArray());
+    }
+
+    long appendTransfer(Transfer t, String idempotencyKey) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TRANSFER_EVENT);
+            writeTransfer(out, t);
+            writeString(out, idempotencyKey == null ? "" : idempotencyKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return journal.append(bytes.toByteArray());
+    }
+
+    void awaitDurable(long position) {
+        journal.awaitDurable(position);
+    }
+
+    void replay(long from, Events events) {
+        journal.replay(from, record -> {
+            byte type = record.get();
+
+            if (type == ACCOUNT_EVENT) {
+                events.account(record.getLong(), readString(record), money(record.getLong()));
+            } else if (type == TRANSFER_EVENT) {
+                Transfer t = readTransfer(record);
+                String key = readString(record);
+
+                events.transfer(t, key.isEmpty() ? null : key);
+            } else {
+                throw new IllegalStateException("Unknown journal event type: " + type);
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, forces it to disk and renames it, so a snapshot is either complete or
+     * missing. Only the latest snapshots are kept, and the journal segments before the oldest of them are deleted.
+     */
+    void writeSnapshot(Snapshot snapshot) {
+        Path tmp = dir.resolve(SNAPSHOT_PREFIX + "tmp");
+
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshot.position);
+            out.writeLong(snapshot.accountIds);
+            out.writeLong(snapshot.transferIds);
+
+            out.writeInt(snapshot.accounts.size());
+            for (AccountState acc : snapshot.accounts) {
+                out.writeLong(acc.id);
+                writeString(out, acc.number);
+                out.writeLong(unscaled(acc.balance));
+            }
+
+            out.writeInt(snapshot.keyedTransfers.size());
+            for (Map.Entry<String, Transfer> keyed : snapshot.keyedTransfers.entrySet()) {
+                writeString(out, keyed.getKey());
+                writeTransfer(out, keyed.getValue());
+            }
+
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+
+            file.getChannel().force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            Files.move(tmp, dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, snapshot.position, SNAPSHOT_SUFFIX)),
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            TreeMap<Long, Path> snapshots = snapshots();
+            while (snapshots.size() > SNAPSHOTS_KEPT)
+                Files.delete(snapshots.pollFirstEntry().getValue());
+
+            journal.deleteBefore(snapshots.firstKey());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the latest readable snapshot, or {@code null} if there is none.
+     */
+    Snapshot latestSnapshot() {
+        try {
+            for (Path file : snapshots().descendingMap().values()) {
+                Snapshot snapshot = readSnapshot(file);
+                if (snapshot != null)
+                    return snapshot;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    private TreeMap<Long, Path> snapshots() throws IOException {
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                snapshots.put(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(),
+                        name.length() - SNAPSHOT_SUFFIX.length())), file);
+            }
+        }
+
+        return snapshots;
+    }
+
+    private static Snapshot readSnapshot(Path file) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+
+            if (in.readInt() != SNAPSHOT_MAGIC)
+                return null;
+
+            Snapshot snapshot = new Snapshot();
+            snapshot.position = in.readLong();
+            snapshot.accountIds = in.readLong();
+            snapshot.transferIds = in.readLong();
+
+            int accounts = in.readInt();
+            snapshot.accounts = new ArrayList<>(accounts);
+            for (int i = 0; i < accounts; i++)
+                snapshot.accounts.add(new AccountState(in.readLong(), readString(in), money(in.readLong())));
+
+            int keyedTransfers = in.readInt();
+            for (int i = 0; i < keyedTransfers; i++)
+                snapshot.keyedTransfers.put(readString(in), readTransfer(in));
+
+            long checksum = checked.getChecksum().getValue();
+
+            return in.readLong() == checksum ? snapshot : null;
+        } catch (java.io.EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeTransfer(DataOutputStream out, Transfer t) throws IOException {
+        out.writeLong(t.id);
+        out.writeLong(t.timestamp.getTime());
+        out.writeLong(t.fromAcc.id);
+        writeString(out, t.fromAcc.number);
+        out.writeLong(t.toAcc.id);
+        writeString(out, t.toAcc.number);
+        out.writeLong(unscaled(t.amount));
+    }
+
+    private static Transfer readTransfer(DataInputStream in) throws IOException {
+        Transfer t = new Transfer();
+        t.id = in.readLong();
+        t.timestamp = new Date(in.readLong());
+        t.fromAcc = reference(in.readLong(), readString(in));
+        t.toAcc = reference(in.readLong(), readString(in));
+        t.amount = money(in.readLong());
+
+        return t;
+    }
+
+    private static Transfer readTransfer(ByteBuffer in) {
+        Transfer t = new Transfer();
+        t.id = in.getLong();
+        t.timestamp = new Date(in.getLong());
+        t.fromAcc = reference(in.getLong(), readString(in));
+        t.toAcc = reference(in.getLong(), readString(in));
+        t.amount = money(in.getLong());
+
+        return t;
+    }
+
+    private static Account reference(long id, String number) {
+        Account acc = new Account();
+        acc.id = id;
+        acc.number = number;
+
+        return acc;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long unscaled(BigDecimal amount) {
+        return amount.setScale(MONEY_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal money(long unscaled) {
+        return BigDecimal.valueOf(unscaled, MONEY_SCALE);
+    }
+}
@@ -0,0 +1,793 @@
+package ledger;
+
+import db.MemoryDatabase;
+import ledger.LedgerShard.AccountState;
+import model.Account;
+import model.AccountCreation;
+import model.Money;
+import model.Transfer;
+import model.TransferRequest;
+import model.Validator;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.NoDataFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.AccountsService;
+import services.DbAccountsService;
+import services.DbTransfersService;
+import services.TransferBatchItem;
+import services.TransfersService;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static db.tables.IdempotencyKey.IDEMPOTENCY_KEY;
+
+/**
+ * In-memory ledger engine with account balances partitioned by account id across single-writer shards.
+ *
+ * Transfers between accounts of the same shard are applied as one shard operation. Cross-shard transfers debit the
+ * sender's shard first and credit the recipient's shard afterwards, so a balance never drops below zero, while the
+ * transferred amount may be briefly in flight between the two shards.
+ *
+ * Errors are reported with the same exceptions as the database backed services, so the REST API answers errors the
+ * same way for both engines.
+ *
+ * A ledger {@link #open opened} on a directory journals every created account and made transfer before answering,
+ * and periodically snapshots the balances, see {@link LedgerStore}. Unlike the database, it only keeps the history of
+ * the transfers made since the snapshot it was last restarted from.
+ */
+public class ShardedLedger implements AccountsService, TransfersService, AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(ShardedLedger.class);
+
+    private static final int MONEY_SCALE = 2;
+    private static final int SCAN_PAGE_SIZE = 1000;
+    private static final int DEFAULT_MAX_KEYS = 100_000;
+    private static final long DEFAULT_KEY_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final Comparator<Transfer> BY_DATE_DESC = Comparator
+            .comparing((Transfer t) -> t.timestamp).thenComparingLong(t -> t.id).reversed();
+
+    private final LedgerShard[] shards;
+
+    private final AtomicLong accountIds = new AtomicLong();
+    private final AtomicLong transferIds = new AtomicLong();
+
+    private final ConcurrentMap<Long, Transfer> transfers = new ConcurrentHashMap<>();
+    private final NavigableSet<Transfer> timeline = new ConcurrentSkipListSet<>(BY_DATE_DESC);
+    //Transfers up to this id were made before the restored snapshot and are not kept
+    private volatile long forgottenTransfers;
+
+    //Keys of at most the last maxKeys transfers made within keyTtlMillis, in insertion order too
+    private final ConcurrentMap<String, KeyedTransfer> idempotencyKeys = new ConcurrentHashMap<>();
+    private final Queue<KeyedTransfer> keysOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger orderedKeys = new AtomicInteger();
+    private final int maxKeys;
+    private final long keyTtlMillis;
+
+    private final LedgerStore store;
+    //Mutations share the lock while they are applied and journaled, a snapshot excludes them
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService snapshots;
+
+    public ShardedLedger(int shardsCount) {
+        this(shardsCount, DEFAULT_MAX_KEYS, DEFAULT_KEY_TTL_MILLIS, null);
+    }
+
+    private ShardedLedger(int shardsCount, int maxKeys, long keyTtlMillis, LedgerStore store) {
+        if (shardsCount <= 0)
+            throw new IllegalArgumentException("Shards count: " + shardsCount + " must be positive");
+        if (maxKeys <= 0)
+            throw new IllegalArgumentException("Max keys: " + maxKeys + " must be positive");
+
+        this.maxKeys = maxKeys;
+        this.keyTtlMillis = keyTtlMillis;
+
+        shards = new LedgerShard[shardsCount];
+        for (int i = 0; i < shardsCount; i++)
+            shards[i] = new LedgerShard(i);
+
+        this.store = store;
+    }
+
+    public static ShardedLedger load(MemoryDatabase db, int shardsCount) {
+        ShardedLedger ledger = new ShardedLedger(shardsCount);
+        ledger.seed(db);
+
+        return ledger;
+    }
+
+    /**
+     * Opens a ledger persisted in {@code dir}, recovering it from the latest snapshot and the journal following it.
+     * A new directory is seeded from {@code db} and snapshotted right away.
+     *
+     * Transfers older than the snapshot are not loaded back into memory, except the ones of idempotency keys, which
+     * are kept for at most {@code maxKeys} transfers made within {@code keyTtlMillis}. Restarts then take time
+     * proportional to the number of accounts and not to the length of the history, and looking such a transfer up
+     * fails with a {@link NoDataFoundException} telling it is no longer kept. The journal is only kept from the oldest
+     * kept snapshot on, a directory whose journal does not reach back to its snapshot is not opened.
+     */
+    public static ShardedLedger open(Path dir, int shardsCount, int segmentSize, long snapshotIntervalMillis,
+                                     MemoryDatabase db) {
+        return open(dir, shardsCount, segmentSize, snapshotIntervalMillis, DEFAULT_MAX_KEYS, DEFAULT_KEY_TTL_MILLIS,
+                db);
+    }
+
+    public static ShardedLedger open(Path dir, int shardsCount, int segmentSize, long snapshotIntervalMillis,
+                                     int maxKeys, long keyTtlMillis, MemoryDatabase db) {
+        LedgerStore store = new LedgerStore(dir, segmentSize);
+        ShardedLedger ledger = new ShardedLedger(shardsCount, maxKeys, keyTtlMillis, store);
+
+        LedgerStore.Snapshot snapshot = store.latestSnapshot();
+        if (snapshot == null && store.position() == 0) {
+            ledger.seed(db);
+            ledger.snapshot();
+        } else {
+            long from = snapshot == null ? 0 : snapshot.position;
+            long journalStart = store.journalStart();
+            if (from < journalStart) {
+                ledger.close();
+                throw new IllegalStateException("Ledger in " + dir + " has no readable snapshot of the journal " +
+                        "before position " + journalStart);
+            }
+
+            if (snapshot != null) {
+                ledger.restore(snapshot);
+                logger.info("Ledger restored from its snapshot at position {}, transfers up to id {} are not kept",
+                        snapshot.position, snapshot.transferIds);
+            }
+
+            store.replay(from, ledger.new Replay());
+            ledger.awaitShards();
+        }
+
+        ledger.snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-snapshots");
+            t.setDaemon(true);
+            return t;
+        });
+        ledger.snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                ledger.snapshot();
+            } catch (RuntimeException e) {
+                logger.error("Failed to snapshot the ledger", e);
+            }
+        }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+
+        return ledger;
+    }
+
+    /**
+     * Writes a snapshot of the persisted ledger covering the journal up to now.
+     */
+    public void snapshot() {
+        if (store == null)
+            throw new IllegalStateException("Ledger is not persisted");
+
+        LedgerStore.Snapshot snapshot = new LedgerStore.Snapshot();
+
+        List<CompletableFuture<List<AccountState>>> results = new ArrayList<>();
+        Lock lock = snapshotLock.writeLock();
+        lock.lock();
+        try {
+            snapshot.position = store.position();
+            snapshot.accountIds = accountIds.get();
+            snapshot.transferIds = transferIds.get();
+
+            for (LedgerShard shard : shards)
+                results.add(shard.call(LedgerShard::accounts));
+
+            for (CompletableFuture<List<AccountState>> result : results)
+                snapshot.accounts.addAll(await(result));
+
+            long now = System.currentTimeMillis();
+            for (KeyedTransfer keyed : idempotencyKeys.values()) {
+                Transfer t = transfers.get(keyed.transferId);
+                if (t != null && !keyed.expired(now))
+                    snapshot.keyedTransfers.put(keyed.key, copy(t));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        store.writeSnapshot(snapshot);
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<CompletableFuture<List<Account>>> results = new ArrayList<>();
+        for (LedgerShard shard : shards)
+            results.add(shard.call(s -> s.accounts().stream().map(ShardedLedger::toAccount).collect(Collectors.toList())));
+
+        List<Account> accounts = new ArrayList<>();
+        for (CompletableFuture<List<Account>> result : results)
+            accounts.addAll(await(result));
+
+        accounts.sort(Comparator.comparingLong(acc -> acc.id));
+
+        return accounts;
+    }
+
+    @Override
+    public List<Account> getAccounts(long after, int limit) {
+        List<CompletableFuture<List<Account>>> results = new ArrayList<>();
+        for (LedgerShard shard : shards)
+            results.add(shard.call(s -> s.accountsAfter(after, limit).stream().map(ShardedLedger::toAccount)
+                    .collect(Collectors.toList())));
+
+        List<Account> accounts = new ArrayList<>();
+        for (CompletableFuture<List<Account>> result : results)
+            accounts.addAll(await(result));
+
+        accounts.sort(Comparator.comparingLong(acc -> acc.id));
+
+        return accounts.size() > limit ? new ArrayList<>(accounts.subList(0, limit)) : accounts;
+    }
+
+    @Override
+    public void forEachAccount(long after, Consumer<Account> action) {
+        List<Account> page = getAccounts(after, SCAN_PAGE_SIZE);
+
+        while (!page.isEmpty()) {
+            page.forEach(action);
+
+            page = page.size() < SCAN_PAGE_SIZE ? Collections.emptyList() :
+                    getAccounts(page.get(page.size() - 1).id, SCAN_PAGE_SIZE);
+        }
+    }
+
+    @Override
+    public Account createAccount(AccountCreation acc) {
+        BigDecimal balance = acc.balance.setScale(MONEY_SCALE, RoundingMode.HALF_DOWN);
+        long cents = cents(balance);
+
+        Account account;
+        long position = 0;
+        Lock lock = snapshotLock.readLock();
+        lock.lock();
+        try {
+            long id = accountIds.incrementAndGet();
+            if (store != null)
+                position = store.appendAccount(id, acc.number, balance);
+
+            account = await(shard(id).call(s -> {
+                s.put(id, acc.number, cents);
+
+                return toAccount(new AccountState(id, acc.number, balance));
+            }));
+        } finally {
+            lock.unlock();
+        }
+
+        if (store != null)
+            store.awaitDurable(position);
+
+        return account;
+    }
+
+    @Override
+    public List<Long> createAccounts(List<AccountCreation> accs) {
+        List<Long> ids = new ArrayList<>(accs.size());
+        for (AccountCreation acc : accs)
+            ids.add(createAccount(acc).id);
+
+        return ids;
+    }
+
+    @Override
+    public Account getAccount(long accId) {
+        return toAccount(await(shard(accId).call(s -> existing(s, accId))));
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId) {
+        List<Long> ids = await(shard(accId).call(s -> {
+            if (!s.exists(accId))
+                throw new NoDataFoundException("No account with id: " + accId);
+
+            return new ArrayList<>(s.transfers(accId));
+        }));
+
+        //Cross-shard transfers are published after the credit, so ids of in-flight transfers are skipped here
+        return ids.stream().map(transfers::get).filter(Objects::nonNull)
+                .sorted(BY_DATE_DESC).map(ShardedLedger::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId, long before, int limit) {
+        List<Transfer> accTransfers = getAccountTransfers(accId);
+        if (before <= 0)
+            return accTransfers.size() > limit ? new ArrayList<>(accTransfers.subList(0, limit)) : accTransfers;
+
+        Transfer beforeTransfer = getTransfer(before);
+
+        return accTransfers.stream().filter(t -> BY_DATE_DESC.compare(t, beforeTransfer) > 0).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Transfer> getAllTransfers() {
+        return timeline.stream().map(ShardedLedger::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Transfer> getTransfers(long after, int limit) {
+        return transfersAfter(after).stream().limit(limit).map(ShardedLedger::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachTransfer(long after, Consumer<Transfer> action) {
+        for (Transfer t : transfersAfter(after))
+            action.accept(copy(t));
+    }
+
+    private NavigableSet<Transfer> transfersAfter(long after) {
+        if (after <= 0)
+            return timeline;
+
+        Transfer t = transfers.get(after);
+        if (t == null)
+            throw missingTransfer(after);
+
+        return timeline.tailSet(t, false);
+    }
+
+    @Override
+    public Transfer getTransfer(long transferId) {
+        Transfer t = transfers.get(transferId);
+        if (t == null)
+            throw missingTransfer(transferId);
+
+        return copy(t);
+    }
+
+    private NoDataFoundException missingTransfer(long transferId) {
+        if (transferId > 0 && transferId <= forgottenTransfers)
+            return new NoDataFoundException("Transfer with id: " + transferId + " was made before the ledger was " +
+                    "restored from its snapshot and is no longer kept");
+
+        return new NoDataFoundException("No transfer with id: " + transferId);
+    }
+
+    @Override
+    public Transfer transferAmount(TransferRequest trReq) {
+        return makeTransfer(trReq, null, null);
+    }
+
+    /**
+     * The first request of a key reserves it and makes the transfer, later requests of the key wait for its result.
+     * A failed transfer releases the key, so it can be retried.
+     */
+    @Override
+    public Transfer transferAmount(TransferRequest trReq, String idempotencyKey) {
+        long now = System.currentTimeMillis();
+        KeyedTransfer keyed = new KeyedTransfer(idempotencyKey, now + keyTtlMillis);
+
+        KeyedTransfer reserved;
+        while ((reserved = idempotencyKeys.putIfAbsent(idempotencyKey, keyed)) != null) {
+            if (!reserved.expired(now))
+                return getTransfer(await(reserved.result));
+
+            idempotencyKeys.remove(idempotencyKey, reserved);
+        }
+        ordered(keyed, now);
+
+        try {
+            Transfer t = makeTransfer(trReq, idempotencyKey, keyed);
+            keyed.result.complete(t.id);
+
+            return t;
+        } catch (RuntimeException e) {
+            idempotencyKeys.remove(idempotencyKey, keyed);
+            keyed.result.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    private Transfer makeTransfer(TransferRequest trReq, String idempotencyKey, KeyedTransfer keyed) {
+        Transfer t;
+        long position;
+        Lock lock = snapshotLock.readLock();
+        lock.lock();
+        try {
+            t = new Transfer();
+            position = applyTransfer(trReq, idempotencyKey, t);
+
+            transfers.put(t.id, t);
+            timeline.add(t);
+            //Snapshotted from now on, as the journal following the snapshot no longer holds it
+            if (keyed != null)
+                keyed.transferId = t.id;
+        } finally {
+            lock.unlock();
+        }
+
+        //Answered once durable, while the journal syncs it with the transfers made meanwhile
+        if (store != null)
+            store.awaitDurable(position);
+
+        return copy(t);
+    }
+
+    /**
+     * Applies the transfer to the balances and journals it, returning its journal position. The transfer is journaled
+     * by the shard of the sender right after the debit, and the recipient is only credited once it is.
+     */
+    private long applyTransfer(TransferRequest trReq, String idempotencyKey, Transfer t) {
+        long cents = trReq.amount;
+        if (cents <= 0)
+            throw new DataAccessException("Transfer amount: " + Money.toString(cents) + " must be positive");
+
+        LedgerShard fromShard = shard(trReq.fromAcc);
+        LedgerShard toShard = shard(trReq.toAcc);
+
+        t.amount = Money.toBigDecimal(cents);
+
+        if (fromShard == toShard) {
+            return await(fromShard.call(s -> {
+                t.toAcc = referenced(s, trReq.toAcc);
+                debit(s, trReq.fromAcc, cents, t);
+                long position = journal(s, t, idempotencyKey);
+
+                s.add(trReq.toAcc, cents);
+                s.addTransfer(trReq.toAcc, t.id);
+
+                return position;
+            }));
+        }
+
+        //Accounts are never removed, so the recipient checked here is still present when the credit is applied
+        t.toAcc = await(toShard.call(s -> referenced(s, trReq.toAcc)));
+
+        long position = await(fromShard.call(s -> {
+            debit(s, trReq.fromAcc, cents, t);
+            return journal(s, t, idempotencyKey);
+        }));
+
+        await(toShard.call(s -> {
+            s.add(trReq.toAcc, cents);
+            s.addTransfer(trReq.toAcc, t.id);
+
+            return null;
+        }));
+
+        return position;
+    }
+
+    /**
+     * Journals the transfer debited on the shard, refunding the debit when the journal fails to take it, so balances
+     * never move without a journal record. The id of a refunded transfer stays in the history of the sender, where
+     * ids of transfers never published are skipped.
+     */
+    private long journal(LedgerShard s, Transfer t, String idempotencyKey) {
+        if (store == null)
+            return 0;
+
+        try {
+            return store.appendTransfer(t, idempotencyKey);
+        } catch (RuntimeException e) {
+            s.add(t.fromAcc.id, cents(t.amount));
+            throw e;
+        }
+    }
+
+    /**
+     * Only best effort batches are supported, as a transfer debited on one shard can not be rolled back atomically
+     * with the others.
+     */
+    @Override
+    public List<TransferBatchItem> transferAmounts(List<TransferRequest> trReqs, boolean atomic) {
+        if (atomic)
+            throw new Validator.ValidationException("Atomic transfer batches are not supported by the ledger engine");
+
+        List<TransferBatchItem> items = new ArrayList<>(trReqs.size());
+        for (TransferRequest trReq : trReqs) {
+            TransferBatchItem item = new TransferBatchItem(trReq);
+            try {
+                item.transfer = transferAmount(trReq);
+            } catch (RuntimeException e) {
+                item.error = e;
+            }
+
+            items.add(item);
+        }
+
+        return items;
+    }
+
+    /**
+     * Closes the ledger, a persisted ledger is snapshotted first.
+     */
+    @Override
+    public void close() {
+        if (snapshots != null) {
+            snapshots.shutdown();
+            try {
+                snapshots.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            snapshot();
+        }
+
+        for (LedgerShard shard : shards)
+            shard.close();
+
+        if (store != null)
+            store.close();
+    }
+
+    private Account debit(LedgerShard s, long accId, long cents, Transfer t) {
+        Account from = referenced(s, accId);
+        if (!s.debit(accId, cents))
+            throw new DataAccessException("Insufficient balance on account with id: " + accId);
+
+        t.id = transferIds.incrementAndGet();
+        t.timestamp = new Date();
+        t.fromAcc = from;
+        s.addTransfer(accId, t.id);
+
+        return from;
+    }
+
+    private void seed(MemoryDatabase db) {
+        new DbAccountsService(db).forEachAccount(0, acc -> restoreAccount(acc.id, acc.number, acc.balance));
+        new DbTransfersService(db).forEachTransfer(0, this::restoreTransfer);
+        db.ctx().selectFrom(IDEMPOTENCY_KEY)
+                .orderBy(IDEMPOTENCY_KEY.TRANSFER_ID)
+                .forEach(key -> restoreKey(key.getId(), transfers.get(key.getTransferId())));
+
+        awaitShards();
+    }
+
+    private void restore(LedgerStore.Snapshot snapshot) {
+        accountIds.set(snapshot.accountIds);
+        transferIds.set(snapshot.transferIds);
+        forgottenTransfers = snapshot.transferIds;
+
+        List<List<AccountState>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++)
+            byShard.add(new ArrayList<>());
+        for (AccountState acc : snapshot.accounts)
+            byShard.get((int) Math.floorMod(acc.id, (long) shards.length)).add(acc);
+
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            List<AccountState> accounts = byShard.get(i);
+            results.add(shards[i].call(s -> {
+                accounts.forEach(s::put);
+                return null;
+            }));
+        }
+        results.forEach(ShardedLedger::await);
+
+        List<Map.Entry<String, Transfer>> keyedTransfers = new ArrayList<>(snapshot.keyedTransfers.entrySet());
+        keyedTransfers.sort(Comparator.comparingLong(keyed -> keyed.getValue().id));
+        for (Map.Entry<String, Transfer> keyed : keyedTransfers) {
+            transfers.put(keyed.getValue().id, keyed.getValue());
+            restoreKey(keyed.getKey(), keyed.getValue());
+        }
+    }
+
+    /**
+     * Applies the journaled events, shard operations are queued without waiting for each of them.
+     */
+    private class Replay implements LedgerStore.Events {
+        @Override
+        public void account(long id, String number, BigDecimal balance) {
+            restoreAccount(id, number, balance);
+        }
+
+        @Override
+        public void transfer(Transfer t, String idempotencyKey) {
+            long cents = cents(t.amount);
+            shard(t.fromAcc.id).call(s -> {
+                s.add(t.fromAcc.id, -cents);
+                return null;
+            });
+            shard(t.toAcc.id).call(s -> {
+                s.add(t.toAcc.id, cents);
+                return null;
+            });
+
+            restoreTransfer(t);
+            if (idempotencyKey != null)
+                restoreKey(idempotencyKey, t);
+        }
+    }
+
+    private void restoreAccount(long id, String number, BigDecimal balance) {
+        accountIds.accumulateAndGet(id, Math::max);
+
+        shard(id).call(s -> {
+            s.put(new AccountState(id, number, balance));
+            return null;
+        });
+    }
+
+    private void restoreTransfer(Transfer t) {
+        transferIds.accumulateAndGet(t.id, Math::max);
+        Transfer restored = copy(t);
+        transfers.put(t.id, restored);
+        timeline.add(restored);
+
+        shard(t.fromAcc.id).call(s -> {
+            s.addTransfer(t.fromAcc.id, t.id);
+            return null;
+        });
+        shard(t.toAcc.id).call(s -> {
+            s.addTransfer(t.toAcc.id, t.id);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the operations queued on all shards so far.
+     */
+    private void awaitShards() {
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (LedgerShard shard : shards)
+            results.add(shard.call(s -> null));
+
+        results.forEach(ShardedLedger::await);
+    }
+
+    private LedgerShard shard(long accId) {
+        return shards[(int) Math.floorMod(accId, (long) shards.length)];
+    }
+
+    private static AccountState existing(LedgerShard s, long accId) {
+        AccountState acc = s.account(accId);
+        if (acc == null)
+            throw new NoDataFoundException("No account with id: " + accId);
+
+        return acc;
+    }
+
+    /**
+     * Reference to the account as put in transfers, its id and number.
+     */
+    private static Account referenced(LedgerShard s, long accId) {
+        String number = s.number(accId);
+        if (number == null)
+            throw new DataAccessException("Referenced account with id: " + accId + " does not exist");
+
+        Account acc = new Account();
+        acc.id = accId;
+        acc.number = number;
+
+        return acc;
+    }
+
+    /**
+     * Amount of scale 2 in cents, failing like the database on amounts out of the range of a transfer.
+     */
+    private static long cents(BigDecimal amount) {
+        try {
+            return LedgerStore.unscaled(amount);
+        } catch (ArithmeticException e) {
+            throw new DataAccessException("Amount: " + amount + " is out of range", e);
+        }
+    }
+
+    /**
+     * Adds the key of a restored transfer, unless the transfer is missing or too old to be kept.
+     */
+    private void restoreKey(String idempotencyKey, Transfer t) {
+        if (t == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        KeyedTransfer keyed = new KeyedTransfer(idempotencyKey, t.timestamp.getTime() + keyTtlMillis);
+        if (keyed.expired(now))
+            return;
+
+        keyed.transferId = t.id;
+        keyed.result.complete(t.id);
+
+        idempotencyKeys.put(idempotencyKey, keyed);
+        ordered(keyed, now);
+    }
+
+    /**
+     * Records the key in insertion order and evicts the oldest keys over the limits.
+     */
+    private void ordered(KeyedTransfer keyed, long now) {
+        keysOrder.add(keyed);
+        orderedKeys.incrementAndGet();
+
+        KeyedTransfer head;
+        while ((head = keysOrder.peek()) != null && (orderedKeys.get() > maxKeys || head.expired(now))) {
+            if (!keysOrder.remove(head))
+                continue;
+
+            orderedKeys.decrementAndGet();
+            idempotencyKeys.remove(head.key, head);
+        }
+    }
+
+    /**
+     * Transfer of an idempotency key, made once its result is complete.
+     */
+    private static class KeyedTransfer {
+        final String key;
+        final long expiresAt;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        //Set once the transfer is journaled, before it is durable
+        volatile long transferId;
+
+        KeyedTransfer(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean expired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    private static Account toAccount(AccountState state) {
+        Account acc = new Account();
+        acc.id = state.id;
+        acc.number = state.number;
+        acc.balance = state.balance;
+
+        return acc;
+    }
+
+    private static Transfer copy(Transfer t) {
+        Transfer c = new Transfer();
+        c.id = t.id;
+        c.timestamp = t.timestamp;
+        c.amount = t.amount;
+
+        c.fromAcc = new Account();
+        c.fromAcc.id = t.fromAcc.id;
+        c.fromAcc.number = t.fromAcc.number;
+
+        c.toAcc = new Account();
+        c.toAcc.id = t.toAcc.id;
+        c.toAcc.number = t.toAcc.number;
+
+        return c;
+    }
+}
@@ -0,0 +1,44 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process wide registry of named metrics. Metrics are created on first use and shared by all callers of the same
+ * name, so components re-created for every test keep reporting into the same series.
+ */
+public class Metrics {
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Registers a value read on demand, replacing the gauge registered before under the same name.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static Map<String, Counter> counters() {
+        return COUNTERS;
+    }
+
+    public static Map<String, Histogram> histograms() {
+        return HISTOGRAMS;
+    }
+
+    public static Map<String, LongSupplier> gauges() {
+        return GAUGES;
+    }
+}
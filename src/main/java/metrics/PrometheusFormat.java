@@ -0,0 +1,99 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Renders the {@link Metrics} registry in the Prometheus text exposition format.
+ *
+ * A metric name may carry labels, as in {@code http_requests_total{route="GET /accounts"}}, series sharing the name
+ * before the labels are rendered as one family.
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusFormat() {}
+
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        for (Map.Entry<String, List<Map.Entry<String, Counter>>> family : families(Metrics.counters()).entrySet()) {
+            type(out, family.getKey(), "counter");
+            for (Map.Entry<String, Counter> counter : family.getValue())
+                sample(out, counter.getKey(), "", counter.getValue().get());
+        }
+
+        for (Map.Entry<String, List<Map.Entry<String, LongSupplier>>> family : families(Metrics.gauges()).entrySet()) {
+            type(out, family.getKey(), "gauge");
+            for (Map.Entry<String, LongSupplier> gauge : family.getValue())
+                sample(out, gauge.getKey(), "", gauge.getValue().getAsLong());
+        }
+
+        for (Map.Entry<String, List<Map.Entry<String, Histogram>>> family : families(Metrics.histograms()).entrySet()) {
+            type(out, family.getKey(), "histogram");
+            for (Map.Entry<String, Histogram> histogram : family.getValue())
+                histogram(out, histogram.getKey(), histogram.getValue());
+        }
+
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, Histogram histogram) {
+        //Empty buckets are skipped, they would repeat the cumulative count of the bucket before
+        long cumulative = 0;
+        for (int i = 0; i < Histogram.BUCKETS - 1; i++) {
+            long count = histogram.bucketCount(i);
+            if (count == 0)
+                continue;
+
+            cumulative += count;
+            sample(out, name, "_bucket", "le", Long.toString(Histogram.bucketBound(i)), cumulative);
+        }
+
+        sample(out, name, "_bucket", "le", "+Inf", cumulative + histogram.bucketCount(Histogram.BUCKETS - 1));
+        sample(out, name, "_sum", histogram.sum());
+        sample(out, name, "_count", histogram.count());
+    }
+
+    private static <T> Map<String, List<Map.Entry<String, T>>> families(Map<String, T> metrics) {
+        Map<String, List<Map.Entry<String, T>>> families = new TreeMap<>();
+        for (Map.Entry<String, T> metric : metrics.entrySet())
+            families.computeIfAbsent(baseName(metric.getKey()), n -> new ArrayList<>()).add(metric);
+
+        return families;
+    }
+
+    private static void type(StringBuilder out, String family, String type) {
+        out.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String suffix, long value) {
+        sample(out, name, suffix, null, null, value);
+    }
+
+    private static void sample(StringBuilder out, String name, String suffix, String label, String labelValue,
+                               long value) {
+        int labels = name.indexOf('{');
+
+        out.append(labels < 0 ? name : name.substring(0, labels)).append(suffix);
+
+        if (label != null) {
+            out.append('{');
+            if (labels >= 0)
+                out.append(name, labels + 1, name.length() - 1).append(',');
+            out.append(label).append("=\"").append(labelValue).append("\"}");
+        } else if (labels >= 0) {
+            out.append(name, labels, name.length());
+        }
+
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String baseName(String name) {
+        int labels = name.indexOf('{');
+        return labels < 0 ? name : name.substring(0, labels);
+    }
+}
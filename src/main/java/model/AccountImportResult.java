@@ -0,0 +1,8 @@
+package model;
+
+public class AccountImportResult {
+    public int index;
+    public int status;
+    public long id;
+    public ErrorMessage error;
+}
@@ -0,0 +1,127 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts of money as longs counting cents, the scale of all amounts and balances in the database.
+ *
+ * Amounts are rounded half down to cents, as {@code setScale(2, RoundingMode.HALF_DOWN)} does, and operations fail
+ * with an {@link ArithmeticException} instead of overflowing. {@link BigDecimal}s are only created where amounts leave
+ * for the database or the API.
+ */
+public final class Money {
+    public static final int SCALE = 2;
+
+    private static final long MAX_WHOLE = Long.MAX_VALUE / 100;
+    private static final int MAX_DIGITS = 17;
+
+    private Money() {}
+
+    /**
+     * Parses a decimal amount, such as a JSON number, into cents without creating a {@link BigDecimal}, unless it has
+     * an exponent.
+     *
+     * @throws NumberFormatException if the amount is malformed or out of range
+     */
+    public static long parse(String amount) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        for (; i < length && isDigit(amount.charAt(i)); i++, wholeDigits++) {
+            if (whole > MAX_WHOLE)
+                throw outOfRange(amount);
+
+            whole = whole * 10 + amount.charAt(i) - '0';
+        }
+
+        long cents = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < length && amount.charAt(i) == '.') {
+            i++;
+
+            boolean half = false;
+            boolean aboveHalf = false;
+            for (; i < length && isDigit(amount.charAt(i)); i++, fractionDigits++) {
+                int digit = amount.charAt(i) - '0';
+                if (fractionDigits < SCALE)
+                    cents = cents * 10 + digit;
+                else if (fractionDigits == SCALE)
+                    half = digit == 5;
+                if (fractionDigits == SCALE && digit > 5 || fractionDigits > SCALE && half && digit > 0)
+                    aboveHalf = true;
+            }
+
+            roundUp = aboveHalf;
+        }
+
+        if (i < length && (amount.charAt(i) == 'e' || amount.charAt(i) == 'E')) {
+            try {
+                return of(new BigDecimal(amount));
+            } catch (ArithmeticException e) {
+                throw outOfRange(amount);
+            }
+        }
+
+        if (i < length || wholeDigits + fractionDigits == 0)
+            throw new NumberFormatException("Amount: " + amount + " is not a number");
+
+        for (int d = fractionDigits; d < SCALE; d++)
+            cents *= 10;
+
+        if (whole > MAX_WHOLE)
+            throw outOfRange(amount);
+
+        try {
+            long result = Math.addExact(whole * 100, roundUp ? cents + 1 : cents);
+
+            return negative ? -result : result;
+        } catch (ArithmeticException e) {
+            throw outOfRange(amount);
+        }
+    }
+
+    /**
+     * Rounds the amount to cents. Amounts far out of range are rejected by their number of digits, before rescaling
+     * them could build huge numbers.
+     *
+     * @throws ArithmeticException if the amount is out of range
+     */
+    public static long of(BigDecimal amount) {
+        if (amount.signum() == 0)
+            return 0;
+
+        //Digits before the decimal point, below 0.001 when not positive
+        long magnitude = (long) amount.precision() - amount.scale();
+        if (magnitude > MAX_DIGITS)
+            throw new ArithmeticException("Amount: " + amount + " is out of range");
+        if (magnitude < -SCALE)
+            return 0;
+
+        return amount.setScale(SCALE, RoundingMode.HALF_DOWN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    public static String toString(long cents) {
+        return toBigDecimal(cents).toPlainString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException outOfRange(String amount) {
+        return new NumberFormatException("Amount: " + amount + " is out of range");
+    }
+}
@@ -1,9 +1,10 @@
 package model;
 
-import java.math.BigDecimal;
-
 public class TransferRequest {
-    public BigDecimal amount;
+    /**
+     * Amount in cents, see {@link Money}.
+     */
+    public long amount;
     public long fromAcc;
     public long toAcc;
 }
@@ -0,0 +1,8 @@
+package model;
+
+public class TransferResult {
+    public int index;
+    public int status;
+    public Transfer transfer;
+    public ErrorMessage error;
+}
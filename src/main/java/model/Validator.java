@@ -3,12 +3,14 @@ package model;
 import java.math.BigDecimal;
 
 public class Validator {
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
     public static void validateTransferRequest(TransferRequest trReq) {
         if (null == trReq)
             throw new IllegalStateException("Transfer amount object can not be null");
 
-        if (trReq.amount.compareTo(BigDecimal.ZERO) <= 0)
-            throw new ValidationException("Transfer amount: " + trReq.amount + " must be positive");
+        if (trReq.amount <= 0)
+            throw new ValidationException("Transfer amount: " + Money.toString(trReq.amount) + " must be positive");
 
         if (trReq.fromAcc == trReq.toAcc)
             throw new ValidationException("Sender's account id: " + trReq.fromAcc + " can not be equal to " +
@@ -31,17 +33,62 @@ public class Validator {
             throw new ValidationException("Reference id: " + id + " must be positive");
     }
 
+    public static void validateLimit(long limit, int maxLimit) {
+        if (limit <= 0 || limit > maxLimit)
+            throw new ValidationException("Limit: " + limit + " must be between 1 and " + maxLimit);
+    }
+
+    public static void validateIdempotencyKey(String key) {
+        if (key.isEmpty() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH)
+            throw new ValidationException("Idempotency key length: " + key.length() + " must be between 1 and " +
+                    MAX_IDEMPOTENCY_KEY_LENGTH);
+    }
+
     public static void validateNumber(String number) {
-        try {
-            Long.parseLong(number);
-        } catch (NumberFormatException e) {
-            throw new ValidationException("String: " + number + " is not a number");
+        parseNumber(number);
+    }
+
+    /**
+     * Parses a decimal long like {@link Long#parseLong(String)}, without creating a {@link NumberFormatException}
+     * for every malformed request parameter.
+     */
+    public static long parseNumber(String number) {
+        int length = number == null ? 0 : number.length();
+        boolean negative = length > 0 && number.charAt(0) == '-';
+        int i = length > 1 && (negative || number.charAt(0) == '+') ? 1 : 0;
+        if (i == length)
+            throw notANumber(number);
+
+        //Accumulated negatively, as in Long.parseLong, since Long.MIN_VALUE has no positive counterpart
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin)
+                throw notANumber(number);
+
+            result *= 10;
+            if (result < limit + digit)
+                throw notANumber(number);
+
+            result -= digit;
         }
+
+        return negative ? result : -result;
+    }
+
+    private static ValidationException notANumber(String number) {
+        return new ValidationException("String: " + number + " is not a number");
     }
 
+    /**
+     * Rejection of a malformed client request. It is expected in normal operation, so it carries no stack trace,
+     * which would cost more to fill in than handling the request.
+     */
     public static class ValidationException extends RuntimeException {
         public ValidationException(String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 }
@@ -1,53 +1,131 @@
 package server;
 
 import db.MemoryDatabase;
+import ledger.ShardedLedger;
+import metrics.PrometheusFormat;
+import server.handlers.Bulkhead;
 import server.handlers.ContentHandlers;
 import server.handlers.ErrorsHandler;
+import server.handlers.GzipJettyFactory;
+import server.handlers.RequestMetrics;
 import server.json.JsonTransformer;
 import server.routes.AccountsRoutes;
 import server.routes.TransfersRoutes;
+import services.AccountCache;
 import services.AccountsService;
+import services.BalanceProjection;
+import services.BalanceStripes;
+import services.BatchingTransfersService;
+import services.DbAccountsService;
+import services.DbTransfersConfig;
+import services.DbTransfersService;
+import services.IdempotencyIndex;
+import services.IdempotentTransfersService;
+import services.ProjectedAccountsService;
+import services.TransferScheduler;
 import services.TransfersService;
+import spark.Route;
+import spark.embeddedserver.EmbeddedServers;
+
+import java.nio.file.Paths;
 
 import static spark.Spark.*;
 
 public class RestApiServer {
-    private final ErrorsHandler errorsHandler = new ErrorsHandler();
+    private final ErrorsHandler errorsHandler;
     private final ContentHandlers contentHandlers = new ContentHandlers();
     private final JsonTransformer json = new JsonTransformer();
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+
+    private final ServerConfig config;
 
     private final AccountsRoutes accRoutes;
     private final TransfersRoutes trRoutes;
 
+    private final Bulkhead reads;
+    private final Bulkhead writes;
+
     public RestApiServer(MemoryDatabase db) {
-        accRoutes = new AccountsRoutes(new AccountsService(db));
-        trRoutes = new TransfersRoutes(new TransfersService(db));
+        this(new ServerConfig(), new DbAccountsService(db), new DbTransfersService(db));
+    }
+
+    public RestApiServer(ServerConfig config, AccountsService accountsService, TransfersService transfersService) {
+        this.config = config;
+        this.errorsHandler = new ErrorsHandler(config.clientErrorLogsPerSecond);
+
+        accRoutes = new AccountsRoutes(accountsService, config.accountImportBatchSize);
+        trRoutes = new TransfersRoutes(new IdempotentTransfersService(transfersService,
+                new IdempotencyIndex(config.idempotencyKeys, config.idempotencyKeyTtlMillis)),
+                config.transferBatchChunkSize, config.atomicTransferBatchMaxSize);
+
+        if (config.bulkheads) {
+            reads = new Bulkhead("reads", config.readConcurrency, config.readQueue, config.bulkheadWaitMillis);
+            writes = new Bulkhead("writes", config.writeConcurrency, config.writeQueue, config.bulkheadWaitMillis);
+        } else {
+            reads = null;
+            writes = null;
+        }
     }
 
     public void start() {
+        registerEmbeddedServer();
+        threadPool(config.serverMaxThreads, config.serverMinThreads, config.serverThreadIdleMillis);
+
+        registerRequestMetrics();
+
         buildAccountsApi();
         buildTransfersApi();
+        buildMetricsApi();
 
         registerResponseContentHandler();
         registerErrorsHandler();
     }
 
     private void buildAccountsApi() {
-        get("/accounts", accRoutes.getAccounts(), json);
+        read("/accounts", accRoutes.getAccounts());
+
+        read("/accounts/:id", accRoutes.getAccountById());
 
-        get("/accounts/:id", accRoutes.getAccountById(), json);
+        read("/accounts/:id/transfers", accRoutes.getAccountTransfersById());
 
-        get("/accounts/:id/transfers", accRoutes.getAccountTransfersById(), json);
+        write("/accounts", accRoutes.postAccount());
 
-        post("/accounts", accRoutes.postAccount(), json);
+        write("/accounts/bulk", accRoutes.postAccountsBulk());
     }
 
     private void buildTransfersApi() {
-        get("/transfers", trRoutes.getTransfers(), json);
+        read("/transfers", trRoutes.getTransfers());
+
+        read("/transfers/:id", trRoutes.getTransferById());
+
+        write("/transfers", trRoutes.postTransfer());
 
-        get("/transfers/:id", trRoutes.getTransferById(), json);
+        write("/transfers/batch", trRoutes.postTransferBatch());
+    }
+
+    private void buildMetricsApi() {
+        get("/metrics", (request, response) -> {
+            response.type(PrometheusFormat.CONTENT_TYPE);
+            return PrometheusFormat.render();
+        });
+    }
+
+    private void read(String path, Route route) {
+        get(path, requestMetrics.route("GET " + path, reads == null ? route : reads.wrap(route)), json);
+    }
+
+    private void write(String path, Route route) {
+        post(path, requestMetrics.route("POST " + path, writes == null ? route : writes.wrap(route)), json);
+    }
+
+    private void registerEmbeddedServer() {
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                new GzipJettyFactory(config.gzipMinSize, config.gzipDeflaterPoolSize));
+    }
 
-        post("/transfers", trRoutes.postTransfer(), json);
+    private void registerRequestMetrics() {
+        before(requestMetrics.start());
+        afterAfter(requestMetrics.finish());
     }
 
     private void registerResponseContentHandler() {
@@ -59,8 +137,46 @@ public class RestApiServer {
     }
 
     public static void main(String[] args) {
-        MemoryDatabase db = new MemoryDatabase();
-        RestApiServer server = new RestApiServer(db);
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        MemoryDatabase db = new MemoryDatabase(config.database);
+
+        RestApiServer server;
+        if (config.engine == ServerConfig.Engine.SHARDED) {
+            ShardedLedger ledger = config.ledgerDataDir == null ? ShardedLedger.load(db, config.ledgerShards) :
+                    ShardedLedger.open(Paths.get(config.ledgerDataDir), config.ledgerShards,
+                            config.ledgerJournalSegmentSize, config.ledgerSnapshotIntervalMillis,
+                            config.idempotencyKeys, config.idempotencyKeyTtlMillis, db);
+            server = new RestApiServer(config, ledger, ledger);
+        } else {
+            AccountCache cache = new AccountCache(config.accountCacheSize);
+
+            BalanceStripes stripes = BalanceStripes.load(db, config.balanceStripes);
+            for (long accId : config.stripedAccounts)
+                stripes.stripe(db, accId);
+
+            TransferScheduler scheduler = new TransferScheduler(config.transferLockStripes,
+                    config.transferLockMaxCallStripes);
+
+            AccountsService accounts = new DbAccountsService(db, cache, stripes);
+            BalanceProjection projection = config.balanceProjection ? BalanceProjection.load(accounts) :
+                    BalanceProjection.disabled();
+            if (projection.enabled())
+                accounts = new ProjectedAccountsService(accounts, projection);
+
+            DbTransfersConfig transfersConfig = new DbTransfersConfig();
+            transfersConfig.mode = config.transfersMode;
+            transfersConfig.cache = cache;
+            transfersConfig.stripes = stripes;
+            transfersConfig.scheduler = scheduler;
+            transfersConfig.projection = projection;
+
+            TransfersService transfers = config.transfersBatching ?
+                    new BatchingTransfersService(db, transfersConfig, config.transfersBatchSize,
+                            config.transfersBatchWindowMillis) :
+                    new DbTransfersService(db, transfersConfig);
+
+            server = new RestApiServer(config, accounts, transfers);
+        }
 
         server.start();
     }
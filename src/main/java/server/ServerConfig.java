@@ -0,0 +1,152 @@
+package server;
+
+import db.DatabaseConfig;
+import services.DbTransfersService;
+import services.TransferScheduler;
+
+import java.util.Arrays;
+
+public class ServerConfig {
+    public enum Engine {
+        DB, SHARDED
+    }
+
+    public DatabaseConfig database = new DatabaseConfig();
+
+    public Engine engine = Engine.DB;
+    public int ledgerShards = Runtime.getRuntime().availableProcessors();
+    public String ledgerDataDir = null;
+    public long ledgerSnapshotIntervalMillis = 60_000;
+    public int ledgerJournalSegmentSize = 64 * 1024 * 1024;
+
+    public DbTransfersService.Mode transfersMode = DbTransfersService.Mode.FAST;
+
+    public int accountCacheSize = 10_000;
+
+    public int balanceStripes = 0;
+    public long[] stripedAccounts = new long[0];
+
+    public int transferLockStripes = 0;
+    public int transferLockMaxCallStripes = TransferScheduler.DEFAULT_MAX_CALL_STRIPES;
+
+    public boolean balanceProjection = false;
+
+    public int idempotencyKeys = 100_000;
+    public long idempotencyKeyTtlMillis = 24 * 60 * 60 * 1000L;
+
+    public int serverMaxThreads = 200;
+    public int serverMinThreads = 8;
+    public int serverThreadIdleMillis = 60_000;
+
+    public boolean bulkheads = false;
+    public int readConcurrency = 64;
+    public int readQueue = 64;
+    public int writeConcurrency = 16;
+    public int writeQueue = 32;
+    public long bulkheadWaitMillis = 1000;
+
+    public int clientErrorLogsPerSecond = 10;
+
+    public int gzipMinSize = 1024;
+    public int gzipDeflaterPoolSize = 2 * Runtime.getRuntime().availableProcessors();
+
+    public boolean transfersBatching = false;
+    public int transfersBatchSize = 64;
+    public long transfersBatchWindowMillis = 2;
+
+    public int accountImportBatchSize = 1000;
+
+    public int transferBatchChunkSize = 500;
+    public int atomicTransferBatchMaxSize = 10_000;
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+
+        config.database.url = System.getProperty("transfers.db.url", config.database.url);
+        //A database given by its url is opened from it, unless an image is asked for explicitly
+        config.database.image = System.getProperty("transfers.db.image",
+                System.getProperty("transfers.db.url") == null ? config.database.image : null);
+        config.database.poolSize = Integer.getInteger("transfers.db.poolSize", config.database.poolSize);
+        config.database.acquireTimeoutMillis = Long.getLong("transfers.db.acquireTimeoutMillis",
+                config.database.acquireTimeoutMillis);
+        config.database.statementCacheSize = Integer.getInteger("transfers.db.statementCacheSize",
+                config.database.statementCacheSize);
+        config.database.transactionControl = DatabaseConfig.TransactionControl.valueOf(System.getProperty(
+                "transfers.db.transactionControl", config.database.transactionControl.name()).toUpperCase());
+        config.database.conflictRetries = Integer.getInteger("transfers.db.conflictRetries",
+                config.database.conflictRetries);
+        config.database.conflictBackoffMillis = Long.getLong("transfers.db.conflictBackoffMillis",
+                config.database.conflictBackoffMillis);
+
+        config.engine = Engine.valueOf(System.getProperty("transfers.engine", config.engine.name()).toUpperCase());
+        config.ledgerShards = Integer.getInteger("transfers.ledger.shards", config.ledgerShards);
+        config.ledgerDataDir = System.getProperty("transfers.ledger.dataDir", config.ledgerDataDir);
+        config.ledgerSnapshotIntervalMillis = Long.getLong("transfers.ledger.snapshotIntervalMillis",
+                config.ledgerSnapshotIntervalMillis);
+        config.ledgerJournalSegmentSize = Integer.getInteger("transfers.ledger.journal.segmentSize",
+                config.ledgerJournalSegmentSize);
+
+        config.transfersMode = DbTransfersService.Mode.valueOf(
+                System.getProperty("transfers.mode", config.transfersMode.name()).toUpperCase());
+
+        config.accountCacheSize = Integer.getInteger("transfers.accountCache.size", config.accountCacheSize);
+
+        config.balanceStripes = Integer.getInteger("transfers.stripes.count", config.balanceStripes);
+        String stripedAccounts = System.getProperty("transfers.stripes.accounts", "").trim();
+        if (!stripedAccounts.isEmpty())
+            config.stripedAccounts = Arrays.stream(stripedAccounts.split(",")).map(String::trim)
+                    .mapToLong(Long::parseLong).toArray();
+
+        config.transferLockStripes = Integer.getInteger("transfers.scheduler.lockStripes", config.transferLockStripes);
+        config.transferLockMaxCallStripes = Integer.getInteger("transfers.scheduler.maxBatchStripes",
+                config.transferLockMaxCallStripes);
+
+        config.balanceProjection = Boolean.getBoolean("transfers.projection.enabled");
+
+        config.idempotencyKeys = Integer.getInteger("transfers.idempotency.maxKeys", config.idempotencyKeys);
+        config.idempotencyKeyTtlMillis = Long.getLong("transfers.idempotency.ttlMillis", config.idempotencyKeyTtlMillis);
+
+        config.serverMaxThreads = Integer.getInteger("transfers.server.maxThreads", config.serverMaxThreads);
+        config.serverMinThreads = Integer.getInteger("transfers.server.minThreads", config.serverMinThreads);
+        config.serverThreadIdleMillis = Integer.getInteger("transfers.server.threadIdleMillis",
+                config.serverThreadIdleMillis);
+
+        config.bulkheads = Boolean.getBoolean("transfers.bulkheads.enabled");
+        config.readConcurrency = Integer.getInteger("transfers.bulkheads.readConcurrency", config.readConcurrency);
+        config.readQueue = Integer.getInteger("transfers.bulkheads.readQueue", config.readQueue);
+        config.writeConcurrency = Integer.getInteger("transfers.bulkheads.writeConcurrency", config.writeConcurrency);
+        config.writeQueue = Integer.getInteger("transfers.bulkheads.writeQueue", config.writeQueue);
+        config.bulkheadWaitMillis = Long.getLong("transfers.bulkheads.waitMillis", config.bulkheadWaitMillis);
+
+        config.clientErrorLogsPerSecond = Integer.getInteger("transfers.errors.clientLogsPerSecond",
+                config.clientErrorLogsPerSecond);
+
+        config.gzipMinSize = Integer.getInteger("transfers.gzip.minSize", config.gzipMinSize);
+        config.gzipDeflaterPoolSize = Integer.getInteger("transfers.gzip.deflaterPoolSize", config.gzipDeflaterPoolSize);
+
+        config.transfersBatching = Boolean.getBoolean("transfers.batch.enabled");
+        config.transfersBatchSize = Integer.getInteger("transfers.batch.size", config.transfersBatchSize);
+        config.transfersBatchWindowMillis = Long.getLong("transfers.batch.windowMillis", config.transfersBatchWindowMillis);
+
+        config.accountImportBatchSize = Integer.getInteger("transfers.accountImport.batchSize",
+                config.accountImportBatchSize);
+
+        config.transferBatchChunkSize = Integer.getInteger("transfers.batchApi.chunkSize", config.transferBatchChunkSize);
+        config.atomicTransferBatchMaxSize = Integer.getInteger("transfers.batchApi.atomicMaxSize",
+                config.atomicTransferBatchMaxSize);
+
+        config.validate();
+
+        return config;
+    }
+
+    /**
+     * Rejects combinations of settings the server would run with incorrectly.
+     */
+    public void validate() {
+        //The projection applies the transfers of an account in commit order only when the scheduler queues them
+        if (engine == Engine.DB && balanceProjection && transferLockStripes <= 0)
+            throw new IllegalArgumentException("transfers.projection.enabled requires a positive " +
+                    "transfers.scheduler.lockStripes");
+    }
+}
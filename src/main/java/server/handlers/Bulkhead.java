@@ -0,0 +1,94 @@
+package server.handlers;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import spark.Route;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits routes sharing the bulkhead to {@code maxConcurrent} requests in progress, with up to {@code maxQueued} more
+ * requests waiting at most {@code maxWaitMillis} for their turn. Requests beyond that are rejected with
+ * {@link RejectedException} instead of tying up further server threads.
+ *
+ * Metrics are reported as {@code bulkhead_<name>_...}: active and queued request gauges, a queue wait histogram and
+ * a rejections counter.
+ */
+public class Bulkhead {
+    private final Counter rejections;
+    private final Histogram queueWait;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        if (maxConcurrent <= 0)
+            throw new IllegalArgumentException("Bulkhead: " + name + " concurrency: " + maxConcurrent +
+                    " must be positive");
+
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+
+        permits = new Semaphore(maxConcurrent, true);
+
+        rejections = Metrics.counter("bulkhead_" + name + "_rejections");
+        queueWait = Metrics.histogram("bulkhead_" + name + "_queue_wait_micros");
+        Metrics.gauge("bulkhead_" + name + "_active", () -> maxConcurrent - permits.availablePermits());
+        Metrics.gauge("bulkhead_" + name + "_queued", queued::get);
+    }
+
+    public Route wrap(Route route) {
+        return (request, response) -> {
+            acquire();
+            try {
+                return route.handle(request, response);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    private void acquire() throws InterruptedException {
+        if (permits.tryAcquire())
+            return;
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejections.inc();
+
+            throw new RejectedException("Too many " + name + " requests in progress");
+        }
+
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                rejections.inc();
+
+                throw new RejectedException("Timed out after " + maxWaitMillis + " ms waiting for one of " +
+                        maxConcurrent + " " + name + " slots");
+            }
+        } finally {
+            queued.decrementAndGet();
+            queueWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Expected while the server is overloaded, so it is created without a stack trace.
+     */
+    public static class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
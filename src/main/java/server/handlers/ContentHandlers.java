@@ -5,8 +5,8 @@ import spark.Filter;
 public class ContentHandlers {
     public Filter getContentHandler() {
         return (request, response) -> {
-            response.header("Content-Encoding", "gzip");
-            response.type("application/json");
+            if (response.raw().getContentType() == null)
+                response.type("application/json");
         };
     }
 }
@@ -1,5 +1,7 @@
 package server.handlers;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
 import model.ErrorMessage;
 import model.Validator;
 import org.jooq.exception.DataAccessException;
@@ -7,38 +9,99 @@ import org.jooq.exception.NoDataFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import server.json.JsonTransformer;
+import services.BatchAbortedException;
 import spark.ExceptionHandler;
 
+/**
+ * Maps exceptions to error responses.
+ *
+ * A request body that is not valid JSON, or not the JSON of the expected model, is a client error.
+ *
+ * Only server faults are logged with their stack trace. Client errors and rejections of an overloaded server are
+ * expected, they are logged as one line each, at most {@code clientErrorLogsPerSecond} a second, so a storm of bad
+ * requests does not make the error path more expensive than serving a request.
+ */
 public class ErrorsHandler {
     private final static Logger logger = LoggerFactory.getLogger(ErrorsHandler.class);
 
     private final JsonTransformer json = new JsonTransformer();
+    private final LogRateLimiter expectedErrorLogs;
+
+    public ErrorsHandler(int clientErrorLogsPerSecond) {
+        expectedErrorLogs = new LogRateLimiter(clientErrorLogsPerSecond);
+    }
 
     public ExceptionHandler<? super java.lang.Exception> exceptionsHandler() {
         return (e, request, response) -> {
-            ErrorMessage error;
+            int status = status(e);
+            response.status(status);
 
-            if (e instanceof Validator.ValidationException) {
-                response.status(422);
+            if (e instanceof Bulkhead.RejectedException)
+                response.header("Retry-After", "1");
 
-                error = new ErrorMessage("Validation error", e.getMessage());
-            } else if (e instanceof NoDataFoundException) {
-                response.status(404);
+            if (isExpected(e)) {
+                long skipped = expectedErrorLogs.tryAcquire();
+                if (skipped >= 0)
+                    logger.warn("Request {} {} failed with {}: {} ({} similar messages skipped)",
+                            request.requestMethod(), request.pathInfo(), status, e.getMessage(), skipped);
+            } else {
+                logger.error("Handled server exception", e);
+            }
 
-                error = new ErrorMessage("Requested entity not found", e.getMessage());
-            } else if (e instanceof DataAccessException) {
-                response.status(500);
+            response.body(json.render(errorMessage(e)));
+        };
+    }
 
-                error = new ErrorMessage("Data access error", e.getMessage());
-            } else {
-                response.status(500);
+    private static boolean isExpected(Exception e) {
+        return status(e) < 500 || e instanceof Bulkhead.RejectedException;
+    }
 
-                error = new ErrorMessage("Internal server error", e.getMessage());
-            }
+    /**
+     * Response status of a request failed with {@code e}.
+     */
+    public static int status(Exception e) {
+        if (e instanceof Validator.ValidationException)
+            return 422;
+        else if (isMalformedJson(e))
+            return 400;
+        else if (e instanceof Bulkhead.RejectedException)
+            return 503;
+        else if (e instanceof NoDataFoundException)
+            return 404;
+        else if (e instanceof BatchAbortedException)
+            return 409;
+        else
+            return 500;
+    }
 
-            logger.error("Handled server exception", e);
+    public static ErrorMessage errorMessage(Exception e) {
+        if (e instanceof Validator.ValidationException)
+            return new ErrorMessage("Validation error", e.getMessage());
+        else if (isMalformedJson(e))
+            return new ErrorMessage("Malformed request", e.getMessage());
+        else if (e instanceof Bulkhead.RejectedException)
+            return new ErrorMessage("Service overloaded", e.getMessage());
+        else if (e instanceof NoDataFoundException)
+            return new ErrorMessage("Requested entity not found", e.getMessage());
+        else if (e instanceof BatchAbortedException)
+            return new ErrorMessage("Batch aborted", e.getMessage());
+        else if (e instanceof DataAccessException)
+            return new ErrorMessage("Data access error", e.getMessage());
+        else
+            return new ErrorMessage("Internal server error", e.getMessage());
+    }
 
-            response.body(json.render(error));
-        };
+    /**
+     * Gson wraps its parse errors in {@link JsonParseException}s, streamed bodies read with a
+     * {@link com.google.gson.stream.JsonReader} fail with a {@link MalformedJsonException} as the cause of an unchecked
+     * exception.
+     */
+    private static boolean isMalformedJson(Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof JsonParseException || e instanceof MalformedJsonException)
+                return true;
+        }
+
+        return false;
     }
 }
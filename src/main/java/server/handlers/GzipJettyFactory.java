@@ -0,0 +1,116 @@
+package server.handlers;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import spark.embeddedserver.EmbeddedServer;
+import spark.embeddedserver.EmbeddedServerFactory;
+import spark.embeddedserver.jetty.EmbeddedJettyServer;
+import spark.embeddedserver.jetty.JettyHandler;
+import spark.http.matching.MatcherFilter;
+import spark.route.Routes;
+import spark.staticfiles.StaticFilesConfiguration;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * Embedded Jetty server of Spark with its request handler wrapped by {@link PooledGzipHandler}.
+ */
+public class GzipJettyFactory implements EmbeddedServerFactory {
+    private final int minGzipSize;
+    private final int deflaterPoolSize;
+
+    public GzipJettyFactory(int minGzipSize, int deflaterPoolSize) {
+        this.minGzipSize = minGzipSize;
+        this.deflaterPoolSize = deflaterPoolSize;
+    }
+
+    @Override
+    public EmbeddedServer create(Routes routeMatcher, StaticFilesConfiguration staticFilesConfiguration,
+                                 boolean hasMultipleHandler) {
+        MatcherFilter matcherFilter = new MatcherFilter(routeMatcher, staticFilesConfiguration, false, hasMultipleHandler);
+        matcherFilter.init(null);
+
+        PooledGzipHandler gzipHandler = new PooledGzipHandler(minGzipSize, deflaterPoolSize);
+        gzipHandler.setHandler(new JettyHandler(matcherFilter) {
+            @Override
+            public void doHandle(String target, Request baseRequest, HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException, ServletException {
+                super.doHandle(target, baseRequest, request, new UnflushedResponse(response));
+            }
+        });
+
+        return new EmbeddedJettyServer(GzipJettyFactory::createServer, gzipHandler);
+    }
+
+    private static Server createServer(int maxThreads, int minThreads, int threadTimeoutMillis) {
+        if (maxThreads <= 0)
+            return new Server();
+
+        return new Server(new QueuedThreadPool(maxThreads, minThreads > 0 ? minThreads : 8,
+                threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000));
+    }
+
+    /**
+     * Spark flushes the serialized body before closing the stream, which commits the response before its length is
+     * known and so makes the gzip handler compress even the smallest bodies. Flushes are left to close instead.
+     */
+    private static class UnflushedResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream out;
+
+        UnflushedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (out == null)
+                out = new UnflushedOutputStream(super.getOutputStream());
+
+            return out;
+        }
+    }
+
+    private static class UnflushedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        UnflushedOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
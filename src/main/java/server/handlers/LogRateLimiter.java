@@ -0,0 +1,38 @@
+package server.handlers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets through at most {@code perSecond} log messages a second and counts the ones skipped.
+ */
+class LogRateLimiter {
+    private final int perSecond;
+
+    private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger logged = new AtomicInteger();
+    private final LongAdder skipped = new LongAdder();
+
+    LogRateLimiter(int perSecond) {
+        this.perSecond = perSecond;
+    }
+
+    /**
+     * Returns the number of messages skipped since the last one let through, or -1 if this one is to be skipped.
+     */
+    long tryAcquire() {
+        long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long current = second.get();
+        if (current != now && second.compareAndSet(current, now))
+            logged.set(0);
+
+        if (logged.incrementAndGet() > perSecond) {
+            skipped.increment();
+            return -1;
+        }
+
+        return skipped.sumThenReset();
+    }
+}
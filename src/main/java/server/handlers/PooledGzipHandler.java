@@ -0,0 +1,47 @@
+package server.handlers;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip handler compressing responses only for clients accepting gzip and only above a minimal size, with
+ * {@link Deflater}s shared between requests through a bounded pool instead of being allocated per request.
+ */
+public class PooledGzipHandler extends GzipHandler {
+    private final BlockingQueue<Deflater> deflaters;
+
+    public PooledGzipHandler(int minGzipSize, int poolSize) {
+        deflaters = new ArrayBlockingQueue<>(poolSize);
+
+        setMinGzipSize(minGzipSize);
+        setIncludedMethods("GET", "POST");
+    }
+
+    @Override
+    public Deflater getDeflater(Request request, long contentLength) {
+        if (contentLength >= 0 && contentLength < getMinGzipSize())
+            return null;
+
+        HttpField accept = request.getHttpFields().getField(HttpHeader.ACCEPT_ENCODING);
+        if (accept == null || !accept.contains("gzip"))
+            return null;
+
+        Deflater deflater = deflaters.poll();
+
+        return deflater != null ? deflater : new Deflater(getCompressionLevel(), true);
+    }
+
+    @Override
+    public void recycle(Deflater deflater) {
+        deflater.reset();
+
+        if (!deflaters.offer(deflater))
+            deflater.end();
+    }
+}
@@ -0,0 +1,90 @@
+package server.handlers;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import spark.Filter;
+import spark.Route;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts requests by route and status and records their latency in the {@code http_request_micros} histograms.
+ *
+ * Spark does not tell filters which route matched, so every route is wrapped with {@link #route} to mark the
+ * request handled by the current thread. Requests matching no route are reported as {@code unmatched}. The state of a
+ * request lives in a per thread holder and the metrics of a route are created with it, so recording a request does
+ * not allocate.
+ */
+public class RequestMetrics {
+    private static final int MAX_STATUS = 599;
+
+    private final RouteMetrics unmatched = new RouteMetrics("unmatched");
+    private final ThreadLocal<Exchange> exchanges = ThreadLocal.withInitial(Exchange::new);
+
+    private static class Exchange {
+        long started;
+        RouteMetrics route;
+    }
+
+    private static class RouteMetrics {
+        final String route;
+        final Histogram latency;
+        final Counter[] statuses = new Counter[MAX_STATUS + 1];
+
+        RouteMetrics(String route) {
+            this.route = route;
+            this.latency = Metrics.histogram("http_request_micros{route=\"" + route + "\"}");
+        }
+
+        void record(int status, long micros) {
+            latency.record(micros);
+
+            if (status < 0 || status > MAX_STATUS)
+                status = 0;
+
+            Counter requests = statuses[status];
+            //Created once per route and status, a racing thread gets the same registered counter
+            if (requests == null)
+                requests = statuses[status] = Metrics.counter(
+                        "http_requests_total{route=\"" + route + "\",status=\"" + status + "\"}");
+
+            requests.inc();
+        }
+    }
+
+    /**
+     * Filter starting the clock of a request, to be registered before all other filters.
+     */
+    public Filter start() {
+        return (request, response) -> {
+            Exchange exchange = exchanges.get();
+            exchange.started = System.nanoTime();
+            exchange.route = unmatched;
+        };
+    }
+
+    /**
+     * Filter recording a request, to be registered as an after-after filter, so that it also sees requests failed
+     * with an exception.
+     */
+    public Filter finish() {
+        return (request, response) -> {
+            Exchange exchange = exchanges.get();
+            exchange.route.record(response.raw().getStatus(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - exchange.started));
+        };
+    }
+
+    /**
+     * Wraps the route, so that its requests are reported under {@code name}.
+     */
+    public Route route(String name, Route route) {
+        RouteMetrics metrics = new RouteMetrics(name);
+
+        return (request, response) -> {
+            exchanges.get().route = metrics;
+            return route.handle(request, response);
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package server.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import model.Account;
+import model.AccountCreation;
+import model.AccountImportResult;
+import model.ErrorMessage;
+import model.Transfer;
+import model.TransferRequest;
+import model.TransferResult;
+
+/**
+ * Single Gson instance shared by all requests. Gson is thread-safe, and with the model adapters registered up front
+ * no reflective adapter lookup is done while handling requests.
+ */
+public class JsonCodec {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Account.class, new ModelAdapters.AccountAdapter())
+            .registerTypeAdapter(AccountCreation.class, new ModelAdapters.AccountCreationAdapter())
+            .registerTypeAdapter(AccountImportResult.class, new ModelAdapters.AccountImportResultAdapter())
+            .registerTypeAdapter(Transfer.class, new ModelAdapters.TransferAdapter())
+            .registerTypeAdapter(TransferRequest.class, new ModelAdapters.TransferRequestAdapter())
+            .registerTypeAdapter(ErrorMessage.class, new ModelAdapters.ErrorMessageAdapter())
+            .registerTypeAdapter(TransferResult.class, new ModelAdapters.TransferResultAdapter())
+            .create();
+
+    private JsonCodec() {}
+
+    public static Gson gson() {
+        return GSON;
+    }
+}
@@ -0,0 +1,35 @@
+package server.json;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Writes a JSON array straight to the response output stream item by item, so the size of the array is not limited
+ * by memory. Routes using it return {@code null} for the response body.
+ */
+public class JsonStream {
+    private final Gson gson = JsonCodec.gson();
+
+    public <T> void writeArray(Response response, Class<T> type, Consumer<Consumer<T>> items) throws IOException {
+        HttpServletResponse raw = response.raw();
+        raw.setContentType("application/json");
+
+        JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(raw.getOutputStream(), StandardCharsets.UTF_8)));
+
+        writer.beginArray();
+        items.accept(item -> gson.toJson(item, type, writer));
+        writer.endArray();
+
+        writer.flush();
+        raw.flushBuffer();
+    }
+}
@@ -1,13 +1,14 @@
 package server.json;
 
-import com.google.gson.Gson;
 import spark.ResponseTransformer;
 
 public class JsonTransformer implements ResponseTransformer {
     @Override
     public String render(Object model) {
-        Gson gson = new Gson();
+        //Routes streaming their body with JsonStream return no model
+        if (model == null)
+            return "";
 
-        return gson.toJson(model);
+        return JsonCodec.gson().toJson(model);
     }
 }
@@ -0,0 +1,453 @@
+package server.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import model.Account;
+import model.AccountCreation;
+import model.AccountImportResult;
+import model.ErrorMessage;
+import model.Money;
+import model.Transfer;
+import model.TransferRequest;
+import model.TransferResult;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Hand-written adapters of the API model, producing the same JSON as reflective Gson adapters: fields in declaration
+ * order, {@code null} fields skipped and dates in Gson's default US date time format.
+ */
+class ModelAdapters {
+    //Same pattern as the DateFormat used by Gson, but thread-safe, so no lock is taken per written date
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(((SimpleDateFormat) DateFormat
+            .getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US)).toPattern(), Locale.US)
+            .withZone(ZoneId.systemDefault());
+
+    static class AccountAdapter extends TypeAdapter<Account> {
+        @Override
+        public void write(JsonWriter out, Account acc) throws IOException {
+            if (acc == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(acc.id);
+            if (acc.number != null)
+                out.name("number").value(acc.number);
+            if (acc.balance != null)
+                out.name("balance").value(acc.balance);
+            out.endObject();
+        }
+
+        @Override
+        public Account read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Account acc = new Account();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        acc.id = readLong(in, acc.id);
+                        break;
+                    case "number":
+                        acc.number = readString(in);
+                        break;
+                    case "balance":
+                        acc.balance = readBigDecimal(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return acc;
+        }
+    }
+
+    static class AccountCreationAdapter extends TypeAdapter<AccountCreation> {
+        @Override
+        public void write(JsonWriter out, AccountCreation acc) throws IOException {
+            if (acc == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (acc.number != null)
+                out.name("number").value(acc.number);
+            if (acc.balance != null)
+                out.name("balance").value(acc.balance);
+            out.endObject();
+        }
+
+        @Override
+        public AccountCreation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            AccountCreation acc = new AccountCreation();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "number":
+                        acc.number = readString(in);
+                        break;
+                    case "balance":
+                        acc.balance = readBigDecimal(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return acc;
+        }
+    }
+
+    static class AccountImportResultAdapter extends TypeAdapter<AccountImportResult> {
+        private final ErrorMessageAdapter errors = new ErrorMessageAdapter();
+
+        @Override
+        public void write(JsonWriter out, AccountImportResult result) throws IOException {
+            if (result == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("index").value(result.index);
+            out.name("status").value(result.status);
+            out.name("id").value(result.id);
+            if (result.error != null)
+                errors.write(out.name("error"), result.error);
+            out.endObject();
+        }
+
+        @Override
+        public AccountImportResult read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            AccountImportResult result = new AccountImportResult();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "index":
+                        result.index = (int) readLong(in, result.index);
+                        break;
+                    case "status":
+                        result.status = (int) readLong(in, result.status);
+                        break;
+                    case "id":
+                        result.id = readLong(in, result.id);
+                        break;
+                    case "error":
+                        result.error = errors.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return result;
+        }
+    }
+
+    static class TransferAdapter extends TypeAdapter<Transfer> {
+        private final AccountAdapter accounts = new AccountAdapter();
+
+        @Override
+        public void write(JsonWriter out, Transfer t) throws IOException {
+            if (t == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(t.id);
+            if (t.timestamp != null)
+                out.name("timestamp").value(DATE_FORMAT.format(t.timestamp.toInstant()));
+            if (t.fromAcc != null)
+                accounts.write(out.name("fromAcc"), t.fromAcc);
+            if (t.toAcc != null)
+                accounts.write(out.name("toAcc"), t.toAcc);
+            if (t.amount != null)
+                out.name("amount").value(t.amount);
+            out.endObject();
+        }
+
+        @Override
+        public Transfer read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Transfer t = new Transfer();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        t.id = readLong(in, t.id);
+                        break;
+                    case "timestamp":
+                        t.timestamp = readDate(in);
+                        break;
+                    case "fromAcc":
+                        t.fromAcc = accounts.read(in);
+                        break;
+                    case "toAcc":
+                        t.toAcc = accounts.read(in);
+                        break;
+                    case "amount":
+                        t.amount = readBigDecimal(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return t;
+        }
+    }
+
+    static class TransferRequestAdapter extends TypeAdapter<TransferRequest> {
+        @Override
+        public void write(JsonWriter out, TransferRequest trReq) throws IOException {
+            if (trReq == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("amount").value(Money.toBigDecimal(trReq.amount));
+            out.name("fromAcc").value(trReq.fromAcc);
+            out.name("toAcc").value(trReq.toAcc);
+            out.endObject();
+        }
+
+        @Override
+        public TransferRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            TransferRequest trReq = new TransferRequest();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "amount":
+                        trReq.amount = readMoney(in, trReq.amount);
+                        break;
+                    case "fromAcc":
+                        trReq.fromAcc = readLong(in, trReq.fromAcc);
+                        break;
+                    case "toAcc":
+                        trReq.toAcc = readLong(in, trReq.toAcc);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return trReq;
+        }
+    }
+
+    static class ErrorMessageAdapter extends TypeAdapter<ErrorMessage> {
+        @Override
+        public void write(JsonWriter out, ErrorMessage error) throws IOException {
+            if (error == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (error.msg != null)
+                out.name("msg").value(error.msg);
+            if (error.desc != null)
+                out.name("desc").value(error.desc);
+            out.endObject();
+        }
+
+        @Override
+        public ErrorMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            ErrorMessage error = new ErrorMessage(null);
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "msg":
+                        error.msg = readString(in);
+                        break;
+                    case "desc":
+                        error.desc = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return error;
+        }
+    }
+
+    static class TransferResultAdapter extends TypeAdapter<TransferResult> {
+        private final TransferAdapter transfers = new TransferAdapter();
+        private final ErrorMessageAdapter errors = new ErrorMessageAdapter();
+
+        @Override
+        public void write(JsonWriter out, TransferResult result) throws IOException {
+            if (result == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("index").value(result.index);
+            out.name("status").value(result.status);
+            if (result.transfer != null)
+                transfers.write(out.name("transfer"), result.transfer);
+            if (result.error != null)
+                errors.write(out.name("error"), result.error);
+            out.endObject();
+        }
+
+        @Override
+        public TransferResult read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            TransferResult result = new TransferResult();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "index":
+                        result.index = (int) readLong(in, result.index);
+                        break;
+                    case "status":
+                        result.status = (int) readLong(in, result.status);
+                        break;
+                    case "transfer":
+                        result.transfer = transfers.read(in);
+                        break;
+                    case "error":
+                        result.error = errors.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return result;
+        }
+    }
+
+    //Like the reflective adapter, a null leaves the primitive field unchanged
+    private static long readLong(JsonReader in, long current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return in.nextString();
+    }
+
+    private static BigDecimal readBigDecimal(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        try {
+            return new BigDecimal(in.nextString());
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads an amount straight into cents, like the primitive fields a null leaves it unchanged.
+     */
+    private static long readMoney(JsonReader in, long current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+
+        try {
+            return Money.parse(in.nextString());
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Date readDate(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String date = in.nextString();
+        try {
+            return Date.from(Instant.from(DATE_FORMAT.parse(date)));
+        } catch (DateTimeParseException e) {
+            throw new JsonSyntaxException(date, e);
+        }
+    }
+}
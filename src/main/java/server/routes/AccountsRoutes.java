@@ -1,30 +1,69 @@
 package server.routes;
 
-import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import model.Account;
 import model.AccountCreation;
+import model.AccountImportResult;
 import model.Validator;
+import server.handlers.ErrorsHandler;
+import server.json.JsonCodec;
+import server.json.JsonStream;
 import services.AccountsService;
+import spark.Response;
 import spark.Route;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 public class AccountsRoutes {
+    public static final String SNAPSHOT_VERSION_HEADER = "X-Snapshot-Version";
+
     private final AccountsService accountsService;
+    private final int importBatchSize;
+
+    private final JsonStream jsonStream = new JsonStream();
+    private final TypeAdapter<AccountCreation> accountCreations = JsonCodec.gson().getAdapter(AccountCreation.class);
 
     public AccountsRoutes(AccountsService accountsService) {
+        this(accountsService, 1000);
+    }
+
+    public AccountsRoutes(AccountsService accountsService, int importBatchSize) {
         this.accountsService = accountsService;
+        this.importBatchSize = importBatchSize;
     }
 
     public Route getAccounts() {
-        return (request, response) -> accountsService.getAllAccounts();
+        return (request, response) -> {
+            long after = Paging.after(request);
+            balancesVersion(response);
+
+            if (Paging.streamed(request)) {
+                jsonStream.writeArray(response, Account.class, action -> accountsService.forEachAccount(after, action));
+
+                return null;
+            }
+
+            if (!Paging.paged(request, "after"))
+                return accountsService.getAllAccounts();
+
+            int limit = Paging.limit(request);
+
+            return Paging.page(request, response, accountsService.getAccounts(after, limit), limit, acc -> acc.id);
+        };
     }
 
     public Route getAccountById() {
         return (request, response) -> {
             String id = request.params(":id");
-            Validator.validateNumber(id);
-
-            long accId = Long.parseLong(id);
+            long accId = Validator.parseNumber(id);
             Validator.validateId(accId);
+            balancesVersion(response);
 
             return accountsService.getAccount(accId);
         };
@@ -33,19 +72,23 @@ public class AccountsRoutes {
     public Route getAccountTransfersById() {
         return (request, response) ->  {
             String id = request.params(":id");
-            Validator.validateNumber(id);
-
-            long accId = Long.parseLong(id);
+            long accId = Validator.parseNumber(id);
             Validator.validateId(accId);
 
-            return accountsService.getAccountTransfers(accId);
+            if (!Paging.paged(request, "before"))
+                return accountsService.getAccountTransfers(accId);
+
+            long before = Paging.before(request);
+            int limit = Paging.limit(request);
+
+            return Paging.page(request, response, "before", accountsService.getAccountTransfers(accId, before, limit),
+                    limit, t -> t.id);
         };
     }
 
     public Route postAccount() {
         return (request, response) -> {
-            Gson gson = new Gson();
-            AccountCreation acc = gson.fromJson(request.body(), AccountCreation.class);
+            AccountCreation acc = JsonCodec.gson().fromJson(request.body(), AccountCreation.class);
             Validator.validateAccountCreation(acc);
 
             Account account = accountsService.createAccount(acc);
@@ -56,4 +99,103 @@ public class AccountsRoutes {
 
         };
     }
+
+    /**
+     * Reads a JSON array or newline delimited JSON objects of accounts item by item, creates them in transactions of
+     * up to {@code importBatchSize} accounts and streams back one result per account, in request order. Only the
+     * current batch is held in memory.
+     */
+    public Route postAccountsBulk() {
+        return (request, response) -> {
+            JsonReader reader = RequestBodies.jsonReader(request);
+            //Lenient readers accept several top level values, i.e. newline delimited JSON
+            reader.setLenient(true);
+
+            boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+            if (array)
+                reader.beginArray();
+
+            jsonStream.writeArray(response, AccountImportResult.class,
+                    results -> importAccounts(reader, array, results));
+
+            return null;
+        };
+    }
+
+    private void importAccounts(JsonReader reader, boolean array, Consumer<AccountImportResult> results) {
+        List<AccountImportResult> batch = new ArrayList<>(importBatchSize);
+        List<AccountCreation> valid = new ArrayList<>(importBatchSize);
+
+        try {
+            int index = 0;
+            while (array ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+                AccountCreation acc = accountCreations.read(reader);
+
+                AccountImportResult result = new AccountImportResult();
+                result.index = index++;
+                try {
+                    Validator.validateAccountCreation(acc);
+                    valid.add(acc);
+                } catch (RuntimeException e) {
+                    failed(result, e);
+                }
+
+                batch.add(result);
+
+                if (batch.size() == importBatchSize) {
+                    createAccounts(batch, valid, results);
+
+                    batch.clear();
+                    valid.clear();
+                }
+            }
+
+            if (array)
+                reader.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        createAccounts(batch, valid, results);
+    }
+
+    private void createAccounts(List<AccountImportResult> batch, List<AccountCreation> valid,
+                                Consumer<AccountImportResult> results) {
+        List<Long> ids = null;
+        RuntimeException error = null;
+        try {
+            if (!valid.isEmpty())
+                ids = accountsService.createAccounts(valid);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        int created = 0;
+        for (AccountImportResult result : batch) {
+            if (result.error == null) {
+                if (error == null) {
+                    result.status = 201;
+                    result.id = ids.get(created++);
+                } else {
+                    failed(result, error);
+                }
+            }
+
+            results.accept(result);
+        }
+    }
+
+    /**
+     * Tells clients reading balances from a snapshot its version, the balances returned are at least as fresh.
+     */
+    private void balancesVersion(Response response) {
+        long version = accountsService.balancesVersion();
+        if (version >= 0)
+            response.header(SNAPSHOT_VERSION_HEADER, Long.toString(version));
+    }
+
+    private static void failed(AccountImportResult result, RuntimeException e) {
+        result.status = ErrorsHandler.status(e);
+        result.error = ErrorsHandler.errorMessage(e);
+    }
 }
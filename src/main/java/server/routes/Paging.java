@@ -0,0 +1,79 @@
+package server.routes;
+
+import model.Validator;
+import spark.Request;
+import spark.Response;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Query parameters of keyset paginated lists: {@code after} (or {@code before} for lists going back in time) is the id
+ * of the last item of the previous page, {@code limit} the page size and {@code stream=true} returns all remaining
+ * items as one streamed array. Lists requested without any of them are returned whole, as before they were paginated.
+ */
+final class Paging {
+    static final int MAX_LIMIT = 1000;
+
+    private Paging() {}
+
+    /**
+     * Whether the client asks for a page, by its {@code limit} or the {@code cursor} parameter.
+     */
+    static boolean paged(Request request, String cursor) {
+        return request.queryParams(cursor) != null || request.queryParams("limit") != null;
+    }
+
+    static long after(Request request) {
+        return id(request, "after");
+    }
+
+    /**
+     * Id of the last item of the previous page of lists paginated backwards in time, newest first.
+     */
+    static long before(Request request) {
+        return id(request, "before");
+    }
+
+    private static long id(Request request, String param) {
+        String value = request.queryParams(param);
+        if (value == null)
+            return 0;
+
+        long id = Validator.parseNumber(value);
+        Validator.validateId(id);
+
+        return id;
+    }
+
+    static int limit(Request request) {
+        String limit = request.queryParams("limit");
+        if (limit == null)
+            return MAX_LIMIT;
+
+        long parsed = Validator.parseNumber(limit);
+        Validator.validateLimit(parsed, MAX_LIMIT);
+
+        return (int) parsed;
+    }
+
+    static boolean streamed(Request request) {
+        return Boolean.parseBoolean(request.queryParams("stream"));
+    }
+
+    /**
+     * Adds a {@code Link} header pointing to the next page, if the current page is full.
+     */
+    static <T> List<T> page(Request request, Response response, List<T> items, int limit, ToLongFunction<T> id) {
+        return page(request, response, "after", items, limit, id);
+    }
+
+    static <T> List<T> page(Request request, Response response, String cursor, List<T> items, int limit,
+                            ToLongFunction<T> id) {
+        if (items.size() == limit)
+            response.header("Link", "<" + request.pathInfo() + "?" + cursor + "=" +
+                    id.applyAsLong(items.get(items.size() - 1)) + "&limit=" + limit + ">; rel=\"next\"");
+
+        return items;
+    }
+}
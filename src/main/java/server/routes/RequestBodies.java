@@ -0,0 +1,26 @@
+package server.routes;
+
+import com.google.gson.stream.JsonReader;
+import spark.Request;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request bodies read as they arrive. Spark's request wrapper copies the whole body into memory on first access, so
+ * its wrapped request is read instead, which only works as long as nothing read the body through Spark before.
+ */
+final class RequestBodies {
+    private RequestBodies() {}
+
+    static JsonReader jsonReader(Request request) throws IOException {
+        ServletRequest raw = request.raw();
+        if (raw instanceof spark.embeddedserver.jetty.HttpRequestWrapper)
+            raw = ((ServletRequestWrapper) raw).getRequest();
+
+        return new JsonReader(new InputStreamReader(raw.getInputStream(), StandardCharsets.UTF_8));
+    }
+}
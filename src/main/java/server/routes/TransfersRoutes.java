@@ -1,29 +1,68 @@
 package server.routes;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import model.Transfer;
 import model.TransferRequest;
+import model.TransferResult;
 import model.Validator;
+import server.handlers.ErrorsHandler;
+import server.json.JsonCodec;
+import server.json.JsonStream;
+import services.BatchAbortedException;
+import services.TransferBatchItem;
 import services.TransfersService;
 import spark.Route;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 public class TransfersRoutes {
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final TransfersService transfersService;
+    private final int batchChunkSize;
+    private final int atomicBatchMaxSize;
+
+    private final JsonStream jsonStream = new JsonStream();
+    private final TypeAdapter<TransferRequest> transferRequests = JsonCodec.gson().getAdapter(TransferRequest.class);
 
     public TransfersRoutes(TransfersService transfersService) {
+        this(transfersService, 500, 10_000);
+    }
+
+    public TransfersRoutes(TransfersService transfersService, int batchChunkSize, int atomicBatchMaxSize) {
         this.transfersService = transfersService;
+        this.batchChunkSize = batchChunkSize;
+        this.atomicBatchMaxSize = atomicBatchMaxSize;
     }
 
     public Route getTransfers() {
-        return (request, response) -> transfersService.getAllTransfers();
+        return (request, response) -> {
+            long after = Paging.after(request);
+
+            if (Paging.streamed(request)) {
+                jsonStream.writeArray(response, Transfer.class, action -> transfersService.forEachTransfer(after, action));
+
+                return null;
+            }
+
+            if (!Paging.paged(request, "after"))
+                return transfersService.getAllTransfers();
+
+            int limit = Paging.limit(request);
+
+            return Paging.page(request, response, transfersService.getTransfers(after, limit), limit, t -> t.id);
+        };
     }
 
     public Route getTransferById() {
         return (request, response) -> {
             String id = request.params(":id");
-            Validator.validateNumber(id);
-
-            long trId = Long.parseLong(id);
+            long trId = Validator.parseNumber(id);
             Validator.validateId(trId);
 
             return transfersService.getTransfer(trId);
@@ -32,15 +71,193 @@ public class TransfersRoutes {
 
     public Route postTransfer() {
         return (request, response) -> {
-            Gson gson = new Gson();
-            TransferRequest trReq = gson.fromJson(request.body(), TransferRequest.class);
+            TransferRequest trReq = JsonCodec.gson().fromJson(request.body(), TransferRequest.class);
             Validator.validateTransferRequest(trReq);
 
-            Transfer transfer = transfersService.transferAmount(trReq);
+            String idempotencyKey = request.headers(IDEMPOTENCY_KEY_HEADER);
+
+            Transfer transfer;
+            if (idempotencyKey == null) {
+                transfer = transfersService.transferAmount(trReq);
+            } else {
+                Validator.validateIdempotencyKey(idempotencyKey);
+                transfer = transfersService.transferAmount(trReq, idempotencyKey);
+            }
 
             response.status(201);
 
             return transfer;
         };
     }
+
+    /**
+     * Reads the JSON array of transfer requests item by item and streams back one result per request, in request
+     * order. A best effort batch is made in transactions of up to {@code batchChunkSize} transfers. An atomic batch
+     * ({@code ?atomic=true}) is read whole and made in one transaction, only if all its requests are valid.
+     *
+     * A body that is not an array of transfer requests fails the whole atomic batch with {@code 400}. Results of a best
+     * effort batch are already being sent when a malformed request is read, so its result, with a {@code 400} status,
+     * is the last one of the array and the requests after it are not read.
+     */
+    public Route postTransferBatch() {
+        return (request, response) -> {
+            boolean atomic = Boolean.parseBoolean(request.queryParams("atomic"));
+
+            JsonReader reader = RequestBodies.jsonReader(request);
+            try {
+                reader.beginArray();
+            } catch (IllegalStateException e) {
+                throw new JsonSyntaxException(e);
+            }
+
+            if (atomic) {
+                List<TransferResult> results = atomicBatch(reader);
+                jsonStream.writeArray(response, TransferResult.class, results::forEach);
+            } else {
+                jsonStream.writeArray(response, TransferResult.class, results -> bestEffortBatch(reader, results));
+            }
+
+            return null;
+        };
+    }
+
+    private List<TransferResult> atomicBatch(JsonReader reader) {
+        List<TransferRequest> trReqs = new ArrayList<>();
+        while (hasNext(reader)) {
+            if (trReqs.size() == atomicBatchMaxSize)
+                throw new Validator.ValidationException("Atomic batch can not have more than " + atomicBatchMaxSize +
+                        " transfers");
+
+            trReqs.add(next(reader));
+        }
+
+        List<TransferResult> results = new ArrayList<>(trReqs.size());
+        boolean valid = true;
+        for (int i = 0; i < trReqs.size(); i++) {
+            RuntimeException error = validationError(trReqs.get(i));
+            results.add(error == null ? null : result(i, null, error));
+            valid &= error == null;
+        }
+
+        if (!valid) {
+            BatchAbortedException aborted = new BatchAbortedException(
+                    "Transfer not made, another transfer of the batch is invalid");
+
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null)
+                    results.set(i, result(i, null, aborted));
+            }
+
+            return results;
+        }
+
+        List<TransferBatchItem> items = transfersService.transferAmounts(trReqs, true);
+        for (int i = 0; i < items.size(); i++)
+            results.set(i, result(i, items.get(i).transfer, items.get(i).error));
+
+        return results;
+    }
+
+    private void bestEffortBatch(JsonReader reader, Consumer<TransferResult> results) {
+        List<TransferResult> chunk = new ArrayList<>(batchChunkSize);
+        List<TransferRequest> valid = new ArrayList<>(batchChunkSize);
+
+        int index = 0;
+        while (true) {
+            TransferRequest trReq;
+            try {
+                if (!hasNext(reader))
+                    break;
+
+                trReq = next(reader);
+            } catch (JsonSyntaxException e) {
+                makeTransfers(index - chunk.size(), chunk, valid, results);
+                results.accept(result(index, null, e));
+
+                return;
+            }
+
+            RuntimeException error = validationError(trReq);
+            chunk.add(error == null ? null : result(index, null, error));
+            if (error == null)
+                valid.add(trReq);
+
+            index++;
+
+            if (chunk.size() == batchChunkSize) {
+                makeTransfers(index - chunk.size(), chunk, valid, results);
+
+                chunk.clear();
+                valid.clear();
+            }
+        }
+
+        makeTransfers(index - chunk.size(), chunk, valid, results);
+    }
+
+    /**
+     * Whether the array of transfer requests has another request, reading the end of the array if not. Errors of a
+     * body that is not an array of transfer requests are thrown as {@link JsonSyntaxException}s, as by Gson.
+     */
+    private static boolean hasNext(JsonReader reader) {
+        try {
+            if (reader.hasNext())
+                return true;
+
+            reader.endArray();
+
+            return false;
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private TransferRequest next(JsonReader reader) {
+        try {
+            return transferRequests.read(reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private void makeTransfers(int firstIndex, List<TransferResult> chunk, List<TransferRequest> valid,
+                               Consumer<TransferResult> results) {
+        List<TransferBatchItem> items = valid.isEmpty() ? new ArrayList<>() :
+                transfersService.transferAmounts(valid, false);
+
+        int made = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferResult result = chunk.get(i);
+            if (result == null) {
+                TransferBatchItem item = items.get(made++);
+                result = result(firstIndex + i, item.transfer, item.error);
+            }
+
+            results.accept(result);
+        }
+    }
+
+    private static RuntimeException validationError(TransferRequest trReq) {
+        try {
+            Validator.validateTransferRequest(trReq);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static TransferResult result(int index, Transfer transfer, RuntimeException error) {
+        TransferResult result = new TransferResult();
+        result.index = index;
+
+        if (error == null) {
+            result.status = 201;
+            result.transfer = transfer;
+        } else {
+            result.status = ErrorsHandler.status(error);
+            result.error = ErrorsHandler.errorMessage(error);
+        }
+
+        return result;
+    }
 }
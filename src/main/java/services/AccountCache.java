@@ -0,0 +1,167 @@
+package services;
+
+import metrics.Counter;
+import metrics.Metrics;
+import model.Account;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Bounded least recently used cache of accounts read by id, disabled when created with a non-positive capacity.
+ *
+ * Accounts are split by id in up to 64 segments, each a least recently used map of its share of the capacity under its
+ * own lock, so reads of accounts of different segments do not contend. The least recently used account is evicted
+ * from the segment of the account cached, a cache of less than 128 accounts is a single segment.
+ *
+ * Services changing balances bracket their transaction with {@link #beginWrite} and {@link #endWrite} of the touched
+ * accounts. Both drop the cached accounts and bump the version of their stripe, and an account loaded from the
+ * database is cached only if no write on its stripe was in progress or started while it was loaded. So a balance read
+ * before a commit is never cached after it.
+ */
+public class AccountCache {
+    private static final int STRIPES = 1024;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    private final Counter hits = Metrics.counter("accounts_cache_hits");
+    private final Counter misses = Metrics.counter("accounts_cache_misses");
+    private final Counter evictions = Metrics.counter("accounts_cache_evictions");
+
+    private final int capacity;
+
+    private final Segment[] segments;
+    // Guarded by the segment of the stripe, the number of segments divides the number of stripes
+    private final long[] versions = new long[STRIPES];
+    private final int[] writers = new int[STRIPES];
+
+    public AccountCache(int capacity) {
+        this.capacity = capacity;
+
+        int count = 1;
+        while (count < MAX_SEGMENTS && capacity / (count * 2) >= MIN_SEGMENT_CAPACITY)
+            count *= 2;
+
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+    }
+
+    public static AccountCache disabled() {
+        return new AccountCache(0);
+    }
+
+    public Account get(long accId, LongFunction<Account> loader) {
+        if (capacity <= 0)
+            return loader.apply(accId);
+
+        int stripe = stripe(accId);
+        Segment segment = segment(stripe);
+        long version;
+
+        synchronized (segment) {
+            Account acc = segment.accounts.get(accId);
+            if (acc != null) {
+                hits.inc();
+                return copy(acc);
+            }
+
+            version = writers[stripe] == 0 ? versions[stripe] : -1;
+        }
+
+        misses.inc();
+
+        Account acc = loader.apply(accId);
+
+        synchronized (segment) {
+            if (version >= 0 && versions[stripe] == version)
+                segment.accounts.put(accId, copy(acc));
+        }
+
+        return acc;
+    }
+
+    public void beginWrite(long... accIds) {
+        if (capacity <= 0)
+            return;
+
+        for (long accId : accIds) {
+            int stripe = stripe(accId);
+            Segment segment = segment(stripe);
+
+            synchronized (segment) {
+                writers[stripe]++;
+                versions[stripe]++;
+                segment.accounts.remove(accId);
+            }
+        }
+    }
+
+    public void endWrite(long... accIds) {
+        if (capacity <= 0)
+            return;
+
+        for (long accId : accIds) {
+            int stripe = stripe(accId);
+            Segment segment = segment(stripe);
+
+            synchronized (segment) {
+                writers[stripe]--;
+                versions[stripe]++;
+                segment.accounts.remove(accId);
+            }
+        }
+    }
+
+    public void invalidate(long accId) {
+        beginWrite(accId);
+        endWrite(accId);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.accounts.size();
+            }
+        }
+
+        return size;
+    }
+
+    private Segment segment(int stripe) {
+        return segments[stripe & (segments.length - 1)];
+    }
+
+    private static int stripe(long accId) {
+        return (int) Math.floorMod(accId, (long) STRIPES);
+    }
+
+    private static Account copy(Account acc) {
+        Account c = new Account();
+        c.id = acc.id;
+        c.number = acc.number;
+        c.balance = acc.balance;
+
+        return c;
+    }
+
+    private class Segment {
+        final Map<Long, Account> accounts;
+
+        Segment(int capacity) {
+            accounts = new LinkedHashMap<Long, Account>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Account> eldest) {
+                    if (size() <= capacity)
+                        return false;
+
+                    evictions.inc();
+
+                    return true;
+                }
+            };
+        }
+    }
+}
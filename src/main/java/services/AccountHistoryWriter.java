@@ -0,0 +1,56 @@
+package services;
+
+import db.RenderedQuery;
+import model.Transfer;
+import org.jooq.DSLContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Appends the ACCOUNT_HISTORY entries of transfers, one per account of a transfer, in the transaction of the transfer.
+ * The transfers of an account are then read with a range scan of the (ACCOUNT_ID, DATE, TRANSFER_ID) primary key
+ * instead of filtering all transfers by sender or recipient.
+ */
+final class AccountHistoryWriter {
+    private static final String INSERT_ENTRY = "INSERT INTO ACCOUNT_HISTORY (ACCOUNT_ID, DATE, TRANSFER_ID) VALUES (?, ?, ?)";
+    private static final RenderedQuery INSERT_ENTRIES = new RenderedQuery(
+            "INSERT INTO ACCOUNT_HISTORY (ACCOUNT_ID, DATE, TRANSFER_ID) VALUES (?, ?, ?), (?, ?, ?)");
+
+    private AccountHistoryWriter() {}
+
+    static void append(DSLContext ctx, long transferId, long fromAcc, long toAcc, Timestamp date) {
+        INSERT_ENTRIES.execute(ctx, insert -> {
+            insert.setLong(1, fromAcc);
+            insert.setTimestamp(2, date);
+            insert.setLong(3, transferId);
+            insert.setLong(4, toAcc);
+            insert.setTimestamp(5, date);
+            insert.setLong(6, transferId);
+
+            return insert.executeUpdate();
+        });
+    }
+
+    static void appendBatch(Connection c, List<Transfer> transfers) throws Exception {
+        try (PreparedStatement insert = c.prepareStatement(INSERT_ENTRY)) {
+            for (Transfer t : transfers) {
+                Timestamp date = new Timestamp(t.timestamp.getTime());
+
+                insert.setLong(1, t.fromAcc.id);
+                insert.setTimestamp(2, date);
+                insert.setLong(3, t.id);
+                insert.addBatch();
+
+                insert.setLong(1, t.toAcc.id);
+                insert.setTimestamp(2, date);
+                insert.setLong(3, t.id);
+                insert.addBatch();
+            }
+
+            insert.executeBatch();
+        }
+    }
+}
@@ -1,70 +1,48 @@
 package services;
 
-import db.MemoryDatabase;
-import db.tables.records.AccountRecord;
 import model.Account;
 import model.AccountCreation;
 import model.Transfer;
-import org.jooq.impl.DSL;
 
 import java.util.List;
+import java.util.function.Consumer;
 
-import static db.tables.Account.ACCOUNT;
-import static db.tables.Transfer.TRANSFER;
+public interface AccountsService {
+    List<Account> getAllAccounts();
 
-public class AccountsService {
-    private final MemoryDatabase db;
+    /**
+     * Returns up to {@code limit} accounts with ids greater than {@code after}, ordered by id.
+     */
+    List<Account> getAccounts(long after, int limit);
 
-    public AccountsService(MemoryDatabase db) {
-        this.db = db;
-    }
-
-    public List<Account> getAllAccounts() {
-        return db.ctx().selectFrom(ACCOUNT).fetchInto(Account.class);
-    }
-
-    public Account createAccount(AccountCreation acc) {
-        return db.ctx().transactionResult(configuration -> {
-            AccountRecord accRec = DSL.using(configuration).insertInto(ACCOUNT, ACCOUNT.NUMBER, ACCOUNT.BALANCE)
-                    .values(acc.number, acc.balance)
-                    .returning(ACCOUNT.ID)
-                    .fetchOne();
-
-            return DSL.using(configuration).selectFrom(ACCOUNT)
-                    .where(ACCOUNT.ID.eq(accRec.getId()))
-                    .fetchSingle().into(Account.class);
-        });
-    }
-
-    public Account getAccount(long accId) {
-        return db.ctx().selectFrom(ACCOUNT).where(ACCOUNT.ID.eq(accId)).fetchSingleInto(Account.class);
-    }
-
-    public List<Transfer> getAccountTransfers(long accId) {
-        db.tables.Account fromAcc = ACCOUNT.as("fromAcc");
-        db.tables.Account toAcc = ACCOUNT.as("toAcc");
+    /**
+     * Passes all accounts with ids greater than {@code after} to {@code action} in id order, without loading them
+     * all into memory.
+     */
+    void forEachAccount(long after, Consumer<Account> action);
 
-        Account acc = getAccount(accId);
+    Account createAccount(AccountCreation acc);
 
-        return db.ctx().selectFrom(TRANSFER.join(fromAcc).onKey(TRANSFER.FROM_ACC).join(toAcc).onKey(TRANSFER.TO_ACC))
-                .where(fromAcc.ID.eq(accId).or(toAcc.ID.eq(acc.id)))
-                .orderBy(TRANSFER.DATE.desc())
-                .fetch(record -> {
-                    Transfer t = new Transfer();
-                    t.fromAcc = new Account();
-                    t.toAcc = new Account();
+    /**
+     * Creates the accounts, returning their ids in the order of {@code accs}.
+     */
+    List<Long> createAccounts(List<AccountCreation> accs);
 
-                    t.id = record.get(TRANSFER.ID);
-                    t.amount = record.get(TRANSFER.AMOUNT);
-                    t.timestamp = record.get(TRANSFER.DATE);
+    Account getAccount(long accId);
 
-                    t.fromAcc.id = record.get(fromAcc.ID);
-                    t.fromAcc.number = record.get(fromAcc.NUMBER);
+    List<Transfer> getAccountTransfers(long accId);
 
-                    t.toAcc.id = record.get(toAcc.ID);
-                    t.toAcc.number = record.get(toAcc.NUMBER);
+    /**
+     * Returns up to {@code limit} transfers of the account made before transfer {@code before} (or the newest
+     * transfers if it is not positive), newest first.
+     */
+    List<Transfer> getAccountTransfers(long accId, long before, int limit);
 
-                    return t;
-                });
+    /**
+     * Version of the balances read from now on, growing with every change applied to them, or -1 when balances are
+     * read from their source of record and always current.
+     */
+    default long balancesVersion() {
+        return -1;
     }
 }
@@ -0,0 +1,275 @@
+package services;
+
+import metrics.Histogram;
+import metrics.Metrics;
+import model.Account;
+import model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Read model of account balances published as immutable snapshots, so balance reads never wait for transfers in
+ * flight and never slow them down. Disabled when created with {@link #disabled()}.
+ *
+ * Services publish account creations and transfers once committed. A single writer thread applies them to a copy of
+ * the current snapshot, as many as are waiting at once, and swaps the copy in. Every snapshot has a version counting
+ * the changes applied to it. Transfers of an account have to be published in commit order, which holds for transfers
+ * queued by an enabled {@link TransferScheduler}. Changes are applied as balance deltas, so transfers published out of
+ * order, like those of striped accounts, only show in a snapshot before transfers committed earlier. Transfers of
+ * accounts whose creation is not applied yet are held back until it is.
+ */
+public class BalanceProjection implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(BalanceProjection.class);
+
+    private static final int MAX_CHANGES = 4096;
+
+    private final Histogram changesApplied = Metrics.histogram("balance_projection_changes");
+
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private final Map<Long, BigDecimal> heldBack = new HashMap<>();
+    private final Thread writer;
+
+    private volatile Snapshot snapshot;
+
+    private BalanceProjection(Snapshot snapshot) {
+        this.snapshot = snapshot;
+
+        if (snapshot == null) {
+            writer = null;
+        } else {
+            writer = new Thread(this::applyLoop, "balance-projection");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public static BalanceProjection disabled() {
+        return new BalanceProjection(null);
+    }
+
+    /**
+     * Starts from all accounts of the service.
+     */
+    public static BalanceProjection load(AccountsService accounts) {
+        List<Account> loaded = new ArrayList<>();
+        accounts.forEachAccount(0, loaded::add);
+        loaded.sort(Comparator.comparingLong(acc -> acc.id));
+
+        long[] ids = new long[loaded.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = loaded.get(i).id;
+
+        return new BalanceProjection(new Snapshot(0, ids, loaded.toArray(new Account[0])));
+    }
+
+    public boolean enabled() {
+        return writer != null;
+    }
+
+    /**
+     * Latest published snapshot, never {@code null} when enabled.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public void created(Account acc) {
+        if (enabled())
+            changes.add(new Change(copy(acc), 0, 0, null));
+    }
+
+    public void transferred(Transfer t) {
+        if (enabled())
+            changes.add(new Change(null, t.fromAcc.id, t.toAcc.id, t.amount));
+    }
+
+    @Override
+    public void close() {
+        if (enabled())
+            writer.interrupt();
+    }
+
+    private void applyLoop() {
+        List<Change> batch = new ArrayList<>(MAX_CHANGES);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(changes.take());
+                changes.drainTo(batch, MAX_CHANGES - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    snapshot = apply(snapshot, batch);
+                    changesApplied.record(batch.size());
+                } catch (RuntimeException e) {
+                    logger.error("Failed to apply " + batch.size() + " balance changes", e);
+                }
+            }
+
+            batch.clear();
+        }
+    }
+
+    private Snapshot apply(Snapshot current, List<Change> batch) {
+        List<Account> created = new ArrayList<>();
+        Map<Long, BigDecimal> deltas = new HashMap<>();
+        for (Change change : batch) {
+            if (change.created != null) {
+                created.add(change.created);
+            } else {
+                deltas.merge(change.fromAcc, change.amount.negate(), BigDecimal::add);
+                deltas.merge(change.toAcc, change.amount, BigDecimal::add);
+            }
+        }
+
+        long[] ids = current.ids;
+        Account[] accounts = current.accounts;
+        if (created.isEmpty()) {
+            accounts = accounts.clone();
+        } else {
+            created.sort(Comparator.comparingLong(acc -> acc.id));
+
+            ids = new long[current.ids.length + created.size()];
+            accounts = new Account[ids.length];
+
+            int size = 0;
+            int i = 0;
+            for (Account acc : created) {
+                for (; i < current.ids.length && current.ids[i] < acc.id; i++, size++) {
+                    ids[size] = current.ids[i];
+                    accounts[size] = current.accounts[i];
+                }
+
+                //An account published twice is kept as applied first, with the transfers made since
+                if (i < current.ids.length && current.ids[i] == acc.id || size > 0 && ids[size - 1] == acc.id)
+                    continue;
+
+                BigDecimal held = heldBack.remove(acc.id);
+                if (held != null)
+                    acc.balance = acc.balance.add(held);
+
+                ids[size] = acc.id;
+                accounts[size++] = acc;
+            }
+
+            for (; i < current.ids.length; i++, size++) {
+                ids[size] = current.ids[i];
+                accounts[size] = current.accounts[i];
+            }
+
+            if (size < ids.length) {
+                ids = Arrays.copyOf(ids, size);
+                accounts = Arrays.copyOf(accounts, size);
+            }
+        }
+
+        for (Map.Entry<Long, BigDecimal> delta : deltas.entrySet()) {
+            int i = Arrays.binarySearch(ids, delta.getKey());
+            if (i < 0) {
+                heldBack.merge(delta.getKey(), delta.getValue(), BigDecimal::add);
+                continue;
+            }
+
+            Account acc = copy(accounts[i]);
+            acc.balance = acc.balance.add(delta.getValue());
+            accounts[i] = acc;
+        }
+
+        return new Snapshot(current.version + batch.size(), ids, accounts);
+    }
+
+    private static Account copy(Account acc) {
+        Account c = new Account();
+        c.id = acc.id;
+        c.number = acc.number;
+        c.balance = acc.balance.setScale(2, RoundingMode.HALF_DOWN);
+
+        return c;
+    }
+
+    private static class Change {
+        final Account created;
+        final long fromAcc;
+        final long toAcc;
+        final BigDecimal amount;
+
+        Change(Account created, long fromAcc, long toAcc, BigDecimal amount) {
+            this.created = created;
+            this.fromAcc = fromAcc;
+            this.toAcc = toAcc;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * Accounts ordered by id, never changed once published. Accounts are returned as copies.
+     */
+    public static class Snapshot {
+        public final long version;
+
+        private final long[] ids;
+        private final Account[] accounts;
+
+        private Snapshot(long version, long[] ids, Account[] accounts) {
+            this.version = version;
+            this.ids = ids;
+            this.accounts = accounts;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns the account, or {@code null} if it is not in the snapshot.
+         */
+        public Account account(long accId) {
+            int i = Arrays.binarySearch(ids, accId);
+
+            return i < 0 ? null : copy(accounts[i]);
+        }
+
+        /**
+         * Returns up to {@code limit} accounts with ids greater than {@code after}.
+         */
+        public List<Account> accounts(long after, int limit) {
+            int from = firstAfter(after);
+            int to = (int) Math.min(ids.length, (long) from + limit);
+
+            List<Account> page = new ArrayList<>(Math.max(to - from, 0));
+            for (int i = from; i < to; i++)
+                page.add(copy(accounts[i]));
+
+            return page;
+        }
+
+        /**
+         * Passes the accounts with ids greater than {@code after} to {@code action} in id order.
+         */
+        public void forEach(long after, Consumer<Account> action) {
+            for (int i = firstAfter(after); i < ids.length; i++)
+                action.accept(copy(accounts[i]));
+        }
+
+        private int firstAfter(long after) {
+            int i = Arrays.binarySearch(ids, after);
+
+            return i < 0 ? -i - 1 : i + 1;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package services;
+
+import db.MemoryDatabase;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static db.tables.Account.ACCOUNT;
+import static db.tables.AccountStripe.ACCOUNT_STRIPE;
+
+/**
+ * Balances of hot accounts split across {@code stripes} ACCOUNT_STRIPE rows in addition to the ACCOUNT row, so
+ * concurrent credits of such an account update different rows.
+ *
+ * Credits go to the stripes round robin. Debits are taken from the ACCOUNT row, which borrows the balance of all
+ * stripes when it runs short. The balance of a striped account is the sum of all its rows, and as every row is kept
+ * non-negative by its check constraint, so is the sum.
+ *
+ * Striping only pays off with row level locking, i.e. MVCC transaction control.
+ */
+public class BalanceStripes {
+    private static final String CHECK_VIOLATION = "23513";
+
+    private final int stripes;
+    private final Set<Long> striped = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextStripe = new AtomicLong();
+
+    public BalanceStripes(int stripes) {
+        this.stripes = stripes;
+    }
+
+    public static BalanceStripes disabled() {
+        return new BalanceStripes(0);
+    }
+
+    /**
+     * Loads accounts striped before, when {@code stripes} is positive.
+     */
+    public static BalanceStripes load(MemoryDatabase db, int stripes) {
+        BalanceStripes balanceStripes = new BalanceStripes(stripes);
+        if (stripes > 0)
+            balanceStripes.striped.addAll(db.ctx().selectDistinct(ACCOUNT_STRIPE.ACCOUNT_ID).from(ACCOUNT_STRIPE)
+                    .fetch(ACCOUNT_STRIPE.ACCOUNT_ID));
+
+        return balanceStripes;
+    }
+
+    public boolean enabled() {
+        return stripes > 0;
+    }
+
+    public boolean isStriped(long accId) {
+        return !striped.isEmpty() && striped.contains(accId);
+    }
+
+    /**
+     * Adds the missing stripe rows of the account, with the whole balance staying on the ACCOUNT row.
+     */
+    public void stripe(MemoryDatabase db, long accId) {
+        if (!enabled())
+            throw new IllegalStateException("Balance striping is disabled");
+
+        db.retryingTransactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+
+            ctx.selectFrom(ACCOUNT).where(ACCOUNT.ID.eq(accId)).forUpdate().fetchSingle();
+
+            for (int stripe = 0; stripe < stripes; stripe++)
+                ctx.mergeInto(ACCOUNT_STRIPE, ACCOUNT_STRIPE.ACCOUNT_ID, ACCOUNT_STRIPE.STRIPE, ACCOUNT_STRIPE.BALANCE)
+                        .key(ACCOUNT_STRIPE.ACCOUNT_ID, ACCOUNT_STRIPE.STRIPE)
+                        .values(accId, stripe, BigDecimal.ZERO)
+                        .execute();
+
+            return null;
+        });
+
+        striped.add(accId);
+    }
+
+    /**
+     * Balance column summing the ACCOUNT row with the stripes of the account.
+     */
+    public Field<BigDecimal> balance() {
+        if (!enabled())
+            return ACCOUNT.BALANCE;
+
+        return ACCOUNT.BALANCE.plus(DSL.coalesce(DSL.select(DSL.sum(ACCOUNT_STRIPE.BALANCE)).from(ACCOUNT_STRIPE)
+                .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(ACCOUNT.ID)).asField(), DSL.inline(BigDecimal.ZERO)))
+                .cast(ACCOUNT.BALANCE.getDataType()).as(ACCOUNT.BALANCE.getName());
+    }
+
+    int credit(DSLContext ctx, long accId, BigDecimal amount) {
+        int stripe = (int) Math.floorMod(nextStripe.getAndIncrement(), (long) stripes);
+
+        return ctx.update(ACCOUNT_STRIPE)
+                .set(ACCOUNT_STRIPE.BALANCE, ACCOUNT_STRIPE.BALANCE.plus(amount))
+                .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(accId).and(ACCOUNT_STRIPE.STRIPE.eq(stripe)))
+                .execute();
+    }
+
+    int debit(DSLContext ctx, long accId, BigDecimal amount) {
+        try {
+            return debitAccountRow(ctx, accId, amount);
+        } catch (DataAccessException e) {
+            if (!isStriped(accId) || !isCheckViolation(e))
+                throw e;
+        }
+
+        collect(ctx, accId);
+
+        return debitAccountRow(ctx, accId, amount);
+    }
+
+    /**
+     * Moves the balance of all stripes of the account to its ACCOUNT row, returns the moved amount.
+     */
+    BigDecimal collect(DSLContext ctx, long accId) {
+        //Stripes are locked before they are summed, so no concurrent credit is lost when they are emptied
+        BigDecimal borrowed = ctx.select(ACCOUNT_STRIPE.BALANCE).from(ACCOUNT_STRIPE)
+                .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(accId)).forUpdate()
+                .fetch(ACCOUNT_STRIPE.BALANCE).stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        ctx.update(ACCOUNT_STRIPE).set(ACCOUNT_STRIPE.BALANCE, BigDecimal.ZERO)
+                .where(ACCOUNT_STRIPE.ACCOUNT_ID.eq(accId))
+                .execute();
+        ctx.update(ACCOUNT).set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(borrowed))
+                .where(ACCOUNT.ID.eq(accId))
+                .execute();
+
+        return borrowed;
+    }
+
+    private static int debitAccountRow(DSLContext ctx, long accId, BigDecimal amount) {
+        return ctx.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(amount))
+                .where(ACCOUNT.ID.eq(accId))
+                .execute();
+    }
+
+    private static boolean isCheckViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && CHECK_VIOLATION.equals(((SQLException) cause).getSQLState()))
+                return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,12 @@
+package services;
+
+/**
+ * Reported for the transfers of an all-or-nothing batch that were not made because another transfer of it failed.
+ */
+public class BatchAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BatchAbortedException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,239 @@
+package services;
+
+import db.MemoryDatabase;
+import metrics.Histogram;
+import metrics.Metrics;
+import model.Transfer;
+import model.TransferRequest;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Group commit stage for transfers: requests arriving within a short window are applied by a single flusher thread
+ * in one database transaction with batched statements.
+ *
+ * Batches are applied by {@link TransferBatch}, so a request failing on an unknown account or an insufficient balance
+ * is rejected on its own without aborting the rest of the batch. Should the batch transaction still fail, its
+ * requests are retried one by one through {@link DbTransfersService}.
+ */
+public class BatchingTransfersService implements TransfersService, AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(BatchingTransfersService.class);
+
+    private final Histogram batchSize = Metrics.histogram("transfers_batch_size");
+    private final Histogram queueWait = Metrics.histogram("transfers_batch_queue_wait_micros");
+
+    private final MemoryDatabase db;
+    private final AccountCache cache;
+    private final BalanceStripes stripes;
+    private final TransferScheduler scheduler;
+    private final DbTransfersService delegate;
+    private final TransferBatch transferBatch;
+
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    public BatchingTransfersService(MemoryDatabase db, int maxBatchSize, long windowMillis) {
+        this(db, new DbTransfersConfig(), maxBatchSize, windowMillis);
+    }
+
+    /**
+     * Transfers bypassing the batch are made in the mode of the config.
+     */
+    public BatchingTransfersService(MemoryDatabase db, DbTransfersConfig config, int maxBatchSize, long windowMillis) {
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Batch size: " + maxBatchSize + " must be positive");
+
+        this.db = db;
+        this.cache = config.cache;
+        this.stripes = config.stripes;
+        this.scheduler = config.scheduler;
+        this.delegate = new DbTransfersService(db, config);
+        this.transferBatch = new TransferBatch(stripes);
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+
+        flusher = new Thread(this::flushLoop, "transfers-batch-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public List<Transfer> getAllTransfers() {
+        return delegate.getAllTransfers();
+    }
+
+    @Override
+    public List<Transfer> getTransfers(long after, int limit) {
+        return delegate.getTransfers(after, limit);
+    }
+
+    @Override
+    public void forEachTransfer(long after, Consumer<Transfer> action) {
+        delegate.forEachTransfer(after, action);
+    }
+
+    @Override
+    public Transfer getTransfer(long transferId) {
+        return delegate.getTransfer(transferId);
+    }
+
+    /**
+     * Transfers of striped accounts bypass the batch, which would collect their stripes into the ACCOUNT row and so
+     * serialize their credits again.
+     */
+    @Override
+    public Transfer transferAmount(TransferRequest trReq) {
+        if (stripes.isStriped(trReq.fromAcc) || stripes.isStriped(trReq.toAcc))
+            return delegate.transferAmount(trReq);
+
+        PendingTransfer pending = new PendingTransfer(trReq);
+        queue.add(pending);
+        //Added after close drained the queue
+        if (closed)
+            failPending();
+
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Transfers with an idempotency key bypass the batch, they are applied by {@link DbTransfersService} directly.
+     */
+    @Override
+    public Transfer transferAmount(TransferRequest trReq, String idempotencyKey) {
+        return delegate.transferAmount(trReq, idempotencyKey);
+    }
+
+    /**
+     * Explicit batches are applied by {@link DbTransfersService} in their own transaction.
+     */
+    @Override
+    public List<TransferBatchItem> transferAmounts(List<TransferRequest> trReqs, boolean atomic) {
+        return delegate.transferAmounts(trReqs, atomic);
+    }
+
+    /**
+     * Stops the flusher once the batch in progress is applied and fails the transfers still queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        failPending();
+    }
+
+    private void failPending() {
+        PendingTransfer pending;
+        while ((pending = queue.poll()) != null)
+            pending.result.completeExceptionally(new IllegalStateException("Transfer not made, the service is closed"));
+    }
+
+    private void flushLoop() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingTransfer next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty())
+                flush(batch);
+
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingTransfer> batch) {
+        long started = System.nanoTime();
+        for (PendingTransfer pending : batch)
+            queueWait.record(TimeUnit.NANOSECONDS.toMicros(started - pending.enqueued));
+
+        batchSize.record(batch.size());
+
+        long[] accIds = TransferBatch.accountIds(batch);
+
+        cache.beginWrite(accIds);
+        try {
+            scheduler.call(() -> {
+                db.retryingTransactionResult(configuration -> {
+                    transferBatch.apply(DSL.using(configuration), batch);
+                    return null;
+                });
+                delegate.publish(batch);
+
+                return null;
+            }, accIds);
+        } catch (RuntimeException e) {
+            logger.warn("Batch of " + batch.size() + " transfers failed, applying them one by one", e);
+
+            for (PendingTransfer pending : batch) {
+                pending.transfer = null;
+                pending.error = null;
+            }
+
+            for (PendingTransfer pending : batch) {
+                try {
+                    pending.transfer = delegate.transferAmount(pending.request);
+                } catch (RuntimeException ex) {
+                    pending.error = ex;
+                }
+            }
+        } finally {
+            cache.endWrite(accIds);
+        }
+
+        for (PendingTransfer pending : batch) {
+            if (pending.error != null)
+                pending.result.completeExceptionally(pending.error);
+            else
+                pending.result.complete(pending.transfer);
+        }
+    }
+
+    private static class PendingTransfer extends TransferBatchItem {
+        final long enqueued = System.nanoTime();
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+
+        PendingTransfer(TransferRequest request) {
+            super(request);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package services;
+
+import db.MemoryDatabase;
+import db.RenderedQuery;
+import db.tables.records.AccountRecord;
+import model.Account;
+import model.AccountCreation;
+import model.Transfer;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.Record3;
+import org.jooq.SelectJoinStep;
+import org.jooq.exception.NoDataFoundException;
+import org.jooq.impl.DSL;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static db.tables.Account.ACCOUNT;
+import static db.tables.AccountHistory.ACCOUNT_HISTORY;
+import static db.tables.Transfer.TRANSFER;
+
+public class DbAccountsService implements AccountsService {
+    private static final int FETCH_SIZE = 1000;
+    private static final String INSERT_ACCOUNT = "INSERT INTO ACCOUNT (NUMBER, BALANCE) VALUES (?, ?)";
+
+    private final MemoryDatabase db;
+    private final AccountCache cache;
+    private final BalanceStripes stripes;
+
+    private final RenderedQuery accountById;
+
+    public DbAccountsService(MemoryDatabase db) {
+        this(db, AccountCache.disabled());
+    }
+
+    public DbAccountsService(MemoryDatabase db, AccountCache cache) {
+        this(db, cache, BalanceStripes.disabled());
+    }
+
+    public DbAccountsService(MemoryDatabase db, AccountCache cache, BalanceStripes stripes) {
+        this.db = db;
+        this.cache = cache;
+        this.stripes = stripes;
+
+        accountById = new RenderedQuery(db.ctx(),
+                selectAccounts().where(ACCOUNT.ID.eq(DSL.param("accId", Long.class))));
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return selectAccounts().fetchInto(Account.class);
+    }
+
+    @Override
+    public List<Account> getAccounts(long after, int limit) {
+        return selectAccounts().orderBy(ACCOUNT.ID).seek(after).limit(limit).fetchInto(Account.class);
+    }
+
+    @Override
+    public void forEachAccount(long after, Consumer<Account> action) {
+        try (Cursor<Record3<Long, String, BigDecimal>> cursor = selectAccounts().orderBy(ACCOUNT.ID).seek(after)
+                .fetchSize(FETCH_SIZE).fetchLazy()) {
+            for (Record3<Long, String, BigDecimal> record : cursor)
+                action.accept(record.into(Account.class));
+        }
+    }
+
+    @Override
+    public Account createAccount(AccountCreation acc) {
+        return db.ctx().transactionResult(configuration -> {
+            AccountRecord accRec = DSL.using(configuration).insertInto(ACCOUNT, ACCOUNT.NUMBER, ACCOUNT.BALANCE)
+                    .values(acc.number, acc.balance)
+                    .returning(ACCOUNT.ID)
+                    .fetchOne();
+
+            return DSL.using(configuration).selectFrom(ACCOUNT)
+                    .where(ACCOUNT.ID.eq(accRec.getId()))
+                    .fetchSingle().into(Account.class);
+        });
+    }
+
+    /**
+     * All accounts or none are created, with one batched statement.
+     */
+    @Override
+    public List<Long> createAccounts(List<AccountCreation> accs) {
+        List<Long> ids = new ArrayList<>(accs.size());
+        if (accs.isEmpty())
+            return ids;
+
+        db.ctx().transaction(configuration -> DSL.using(configuration).connection(c -> {
+            try (PreparedStatement insert = c.prepareStatement(INSERT_ACCOUNT, new String[]{"ID"})) {
+                for (AccountCreation acc : accs) {
+                    insert.setString(1, acc.number);
+                    insert.setBigDecimal(2, acc.balance);
+                    insert.addBatch();
+                }
+
+                insert.executeBatch();
+
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    while (keys.next())
+                        ids.add(keys.getLong(1));
+                }
+            }
+        }));
+
+        //A database recreated under the same cache may have handed out these ids before
+        for (long id : ids)
+            cache.invalidate(id);
+
+        return ids;
+    }
+
+    @Override
+    public Account getAccount(long accId) {
+        return cache.get(accId, this::accountById);
+    }
+
+    private Account accountById(long accId) {
+        Account acc = accountById.execute(db.ctx(), select -> {
+            select.setLong(1, accId);
+
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next())
+                    return null;
+
+                Account found = new Account();
+                found.id = rs.getLong(1);
+                found.number = rs.getString(2);
+                found.balance = rs.getBigDecimal(3);
+
+                return found;
+            }
+        });
+
+        if (acc == null)
+            throw new NoDataFoundException("No account with id: " + accId);
+
+        return acc;
+    }
+
+    private SelectJoinStep<Record3<Long, String, BigDecimal>> selectAccounts() {
+        return db.ctx().select(ACCOUNT.ID, ACCOUNT.NUMBER, stripes.balance()).from(ACCOUNT);
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId) {
+        return getAccountTransfers(accId, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId, long before, int limit) {
+        db.tables.Account fromAcc = ACCOUNT.as("fromAcc");
+        db.tables.Account toAcc = ACCOUNT.as("toAcc");
+
+        Account acc = getAccount(accId);
+
+        Condition beforeCondition = DSL.trueCondition();
+        if (before > 0) {
+            Timestamp beforeDate = db.ctx().select(TRANSFER.DATE).from(TRANSFER).where(TRANSFER.ID.eq(before))
+                    .fetchSingle(TRANSFER.DATE);
+
+            beforeCondition = DSL.row(ACCOUNT_HISTORY.DATE, ACCOUNT_HISTORY.TRANSFER_ID).lt(beforeDate, before);
+        }
+
+        return db.ctx().select(TRANSFER.ID, TRANSFER.AMOUNT, TRANSFER.DATE, fromAcc.ID, fromAcc.NUMBER, toAcc.ID,
+                toAcc.NUMBER)
+                .from(ACCOUNT_HISTORY
+                        .join(TRANSFER).on(TRANSFER.ID.eq(ACCOUNT_HISTORY.TRANSFER_ID))
+                        .join(fromAcc).onKey(TRANSFER.FROM_ACC)
+                        .join(toAcc).onKey(TRANSFER.TO_ACC))
+                .where(ACCOUNT_HISTORY.ACCOUNT_ID.eq(acc.id).and(beforeCondition))
+                //Ordered by the whole primary key, otherwise HSQLDB sorts all entries of the account before the limit
+                .orderBy(ACCOUNT_HISTORY.ACCOUNT_ID.desc(), ACCOUNT_HISTORY.DATE.desc(),
+                        ACCOUNT_HISTORY.TRANSFER_ID.desc())
+                .limit(limit)
+                .fetch(record -> {
+                    Transfer t = new Transfer();
+                    t.fromAcc = new Account();
+                    t.toAcc = new Account();
+
+                    t.id = record.get(TRANSFER.ID);
+                    t.amount = record.get(TRANSFER.AMOUNT);
+                    t.timestamp = record.get(TRANSFER.DATE);
+
+                    t.fromAcc.id = record.get(fromAcc.ID);
+                    t.fromAcc.number = record.get(fromAcc.NUMBER);
+
+                    t.toAcc.id = record.get(toAcc.ID);
+                    t.toAcc.number = record.get(toAcc.NUMBER);
+
+                    return t;
+                });
+    }
+}
@@ -0,0 +1,17 @@
+package services;
+
+/**
+ * Optional components of {@link DbTransfersService} and {@link BatchingTransfersService}, all disabled by default.
+ */
+public class DbTransfersConfig {
+    public DbTransfersService.Mode mode = DbTransfersService.Mode.FAST;
+
+    public AccountCache cache = AccountCache.disabled();
+    public BalanceStripes stripes = BalanceStripes.disabled();
+    public TransferScheduler scheduler = TransferScheduler.disabled();
+    /**
+     * Committed transfers are published while the scheduler still holds their accounts, so the transfers of an
+     * account reach the projection in commit order.
+     */
+    public BalanceProjection projection = BalanceProjection.disabled();
+}
@@ -0,0 +1,517 @@
+package services;
+
+import db.MemoryDatabase;
+import db.RenderedQuery;
+import db.tables.Account;
+import metrics.Histogram;
+import metrics.Metrics;
+import model.Money;
+import model.Transfer;
+import model.TransferRequest;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Cursor;
+import org.jooq.Param;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.SelectLimitStep;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.NoDataFoundException;
+import org.jooq.impl.DSL;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static db.tables.Account.ACCOUNT;
+import static db.tables.IdempotencyKey.IDEMPOTENCY_KEY;
+import static db.tables.Transfer.TRANSFER;
+
+public class DbTransfersService implements TransfersService {
+    /**
+     * {@link #CLASSIC} locks both accounts, updates them one by one and re-reads the inserted transfer.
+     * {@link #FAST} moves the amount with one UPDATE and builds the result from the generated transfer row.
+     */
+    public enum Mode {
+        CLASSIC, FAST
+    }
+
+    private static final int FETCH_SIZE = 1000;
+
+    //Time spent in each SQL step of a transfer, the UPDATE of the fast mode includes waiting for the row locks
+    private final Histogram lockMicros = Metrics.histogram("transfers_sql_micros{step=\"lock\"}");
+    private final Histogram updateMicros = Metrics.histogram("transfers_sql_micros{step=\"update\"}");
+    private final Histogram insertMicros = Metrics.histogram("transfers_sql_micros{step=\"insert\"}");
+    private final Histogram rereadMicros = Metrics.histogram("transfers_sql_micros{step=\"reread\"}");
+
+    private final MemoryDatabase db;
+    private final Mode mode;
+    private final AccountCache cache;
+    private final BalanceStripes stripes;
+    private final TransferScheduler scheduler;
+    private final BalanceProjection projection;
+    private final TransferBatch transferBatch;
+
+    private final Account fromAcc = ACCOUNT.as("fromAcc");
+    private final Account toAcc = ACCOUNT.as("toAcc");
+
+    //Fixed queries of transfers, rendered once
+    private final RenderedQuery lockAccounts;
+    private final RenderedQuery moveAmount;
+    private final RenderedQuery debitAccount;
+    private final RenderedQuery creditAccount;
+    private final RenderedQuery insertTransfer;
+    private final RenderedQuery accountNumbers;
+    private final RenderedQuery transferById;
+
+    public DbTransfersService(MemoryDatabase db) {
+        this(db, new DbTransfersConfig());
+    }
+
+    public DbTransfersService(MemoryDatabase db, DbTransfersConfig config) {
+        this.db = db;
+        this.mode = config.mode;
+        this.cache = config.cache;
+        this.stripes = config.stripes;
+        this.scheduler = config.scheduler;
+        this.projection = config.projection;
+        this.transferBatch = new TransferBatch(stripes);
+
+        DSLContext ctx = db.ctx();
+        Param<Long> accId = DSL.param("accId", Long.class);
+        Param<Long> otherAccId = DSL.param("otherAccId", Long.class);
+        Param<BigDecimal> amount = DSL.param("amount", BigDecimal.class);
+
+        lockAccounts = new RenderedQuery(ctx, ctx.select(ACCOUNT.ID).from(ACCOUNT)
+                .where(ACCOUNT.ID.in(accId, otherAccId)).orderBy(ACCOUNT.ID).forUpdate());
+        moveAmount = new RenderedQuery(ctx, ctx.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, DSL.when(ACCOUNT.ID.eq(accId), ACCOUNT.BALANCE.minus(amount))
+                        .otherwise(ACCOUNT.BALANCE.plus(amount)))
+                .where(ACCOUNT.ID.in(accId, otherAccId)));
+        debitAccount = new RenderedQuery(ctx, ctx.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(amount)).where(ACCOUNT.ID.eq(accId)));
+        creditAccount = new RenderedQuery(ctx, ctx.update(ACCOUNT)
+                .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(amount)).where(ACCOUNT.ID.eq(accId)));
+        insertTransfer = new RenderedQuery(ctx, ctx.insertInto(TRANSFER, TRANSFER.FROM_ACC, TRANSFER.TO_ACC,
+                TRANSFER.AMOUNT).values(accId, otherAccId, amount), TRANSFER.ID, TRANSFER.DATE);
+        accountNumbers = new RenderedQuery(ctx, ctx.select(ACCOUNT.ID, ACCOUNT.NUMBER).from(ACCOUNT)
+                .where(ACCOUNT.ID.in(accId, otherAccId)));
+        transferById = new RenderedQuery(ctx, ctx.select(TRANSFER.ID, TRANSFER.AMOUNT, TRANSFER.DATE, fromAcc.ID,
+                fromAcc.NUMBER, toAcc.ID, toAcc.NUMBER)
+                .from(TRANSFER.join(fromAcc).onKey(TRANSFER.FROM_ACC).join(toAcc).onKey(TRANSFER.TO_ACC))
+                .where(TRANSFER.ID.eq(accId)));
+    }
+
+    @Override
+    public List<Transfer> getAllTransfers() {
+        return db.ctx().selectFrom(TRANSFER
+                .join(fromAcc).onKey(TRANSFER.FROM_ACC)
+                .join(toAcc).onKey(TRANSFER.TO_ACC))
+                .orderBy(TRANSFER.DATE.desc())
+                .fetch(new TransferRecordMapper());
+    }
+
+    @Override
+    public List<Transfer> getTransfers(long after, int limit) {
+        return transfersAfter(after).limit(limit).fetch(new TransferRecordMapper());
+    }
+
+    @Override
+    public void forEachTransfer(long after, Consumer<Transfer> action) {
+        TransferRecordMapper mapper = new TransferRecordMapper();
+
+        try (Cursor<Record> cursor = transfersAfter(after).fetchSize(FETCH_SIZE).fetchLazy()) {
+            for (Record record : cursor)
+                action.accept(mapper.map(record));
+        }
+    }
+
+    private SelectLimitStep<Record> transfersAfter(long after) {
+        Condition afterCondition = DSL.trueCondition();
+
+        if (after > 0) {
+            Timestamp afterDate = db.ctx().select(TRANSFER.DATE).from(TRANSFER).where(TRANSFER.ID.eq(after))
+                    .fetchSingle(TRANSFER.DATE);
+
+            afterCondition = DSL.row(TRANSFER.DATE, TRANSFER.ID).lt(afterDate, after);
+        }
+
+        return db.ctx().selectFrom(TRANSFER
+                .join(fromAcc).onKey(TRANSFER.FROM_ACC)
+                .join(toAcc).onKey(TRANSFER.TO_ACC))
+                .where(afterCondition)
+                .orderBy(TRANSFER.DATE.desc(), TRANSFER.ID.desc());
+    }
+
+    @Override
+    public Transfer getTransfer(long transferId) {
+        return transferById(db.ctx(), transferId);
+    }
+
+    private Transfer transferById(DSLContext ctx, long transferId) {
+        Transfer t = transferById.execute(ctx, select -> {
+            select.setLong(1, transferId);
+
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? transfer(rs) : null;
+            }
+        });
+
+        if (t == null)
+            throw new NoDataFoundException("No transfer with id: " + transferId);
+
+        return t;
+    }
+
+    @Override
+    public Transfer transferAmount(TransferRequest trReq) {
+        cache.beginWrite(trReq.fromAcc, trReq.toAcc);
+        try {
+            return scheduler.call(() -> {
+                Transfer t = db.retryingTransactionResult(
+                        configuration -> transferAmount(DSL.using(configuration), trReq));
+                projection.transferred(t);
+
+                return t;
+            }, scheduled(trReq.fromAcc, trReq.toAcc));
+        } finally {
+            cache.endWrite(trReq.fromAcc, trReq.toAcc);
+        }
+    }
+
+    /**
+     * The key is stored in the transaction of the transfer, so a key survives restarts and is seen by every instance
+     * sharing the database.
+     */
+    @Override
+    public Transfer transferAmount(TransferRequest trReq, String idempotencyKey) {
+        cache.beginWrite(trReq.fromAcc, trReq.toAcc);
+        try {
+            return scheduler.call(() -> {
+                boolean[] made = new boolean[1];
+
+                Transfer t = db.retryingTransactionResult(configuration -> {
+                    DSLContext ctx = DSL.using(configuration);
+
+                    made[0] = false;
+                    Transfer recorded = recordedTransfer(ctx, idempotencyKey);
+                    if (recorded != null)
+                        return recorded;
+
+                    Transfer transfer = transferAmount(ctx, trReq);
+
+                    ctx.insertInto(IDEMPOTENCY_KEY, IDEMPOTENCY_KEY.ID, IDEMPOTENCY_KEY.TRANSFER_ID)
+                            .values(idempotencyKey, transfer.id)
+                            .execute();
+
+                    made[0] = true;
+                    return transfer;
+                });
+                //Transfers recorded before were published when made
+                if (made[0])
+                    projection.transferred(t);
+
+                return t;
+            }, scheduled(trReq.fromAcc, trReq.toAcc));
+        } catch (DataAccessException e) {
+            //A concurrent request with the same key committed first
+            Transfer recorded = recordedTransfer(db.ctx(), idempotencyKey);
+            if (recorded == null)
+                throw e;
+
+            return recorded;
+        } finally {
+            cache.endWrite(trReq.fromAcc, trReq.toAcc);
+        }
+    }
+
+    /**
+     * The transfers are made in one transaction with batched statements. Best effort batches failing as a whole are
+     * made one by one instead.
+     */
+    @Override
+    public List<TransferBatchItem> transferAmounts(List<TransferRequest> trReqs, boolean atomic) {
+        List<TransferBatchItem> items = trReqs.stream().map(TransferBatchItem::new).collect(Collectors.toList());
+        if (items.isEmpty())
+            return items;
+
+        long[] accIds = TransferBatch.accountIds(items);
+
+        cache.beginWrite(accIds);
+        try {
+            scheduler.call(() -> {
+                db.retryingTransactionResult(configuration -> {
+                    transferBatch.apply(DSL.using(configuration), items);
+
+                    //Rolls back the transfers made so far
+                    if (atomic && items.stream().anyMatch(item -> item.error != null))
+                        throw new BatchAbortedException("Transfer not made, another transfer of the batch failed");
+
+                    return null;
+                });
+                publish(items);
+
+                return null;
+            }, scheduled(accIds));
+        } catch (BatchAbortedException e) {
+            for (TransferBatchItem item : items) {
+                if (item.error == null) {
+                    item.transfer = null;
+                    item.error = e;
+                }
+            }
+        } catch (RuntimeException e) {
+            for (TransferBatchItem item : items) {
+                item.transfer = null;
+                item.error = atomic ? e : null;
+            }
+
+            if (!atomic) {
+                for (TransferBatchItem item : items) {
+                    try {
+                        item.transfer = transferAmount(item.request);
+                    } catch (RuntimeException ex) {
+                        item.error = ex;
+                    }
+                }
+            }
+        } finally {
+            cache.endWrite(accIds);
+        }
+
+        return items;
+    }
+
+    /**
+     * Accounts the scheduler queues the transfer on. Striped accounts are left out, their credits go to different rows
+     * so they do not conflict and queueing them would serialize them again.
+     */
+    private long[] scheduled(long... accIds) {
+        if (!stripes.enabled())
+            return accIds;
+
+        return Arrays.stream(accIds).filter(accId -> !stripes.isStriped(accId)).toArray();
+    }
+
+    void publish(List<? extends TransferBatchItem> items) {
+        for (TransferBatchItem item : items) {
+            if (item.transfer != null)
+                projection.transferred(item.transfer);
+        }
+    }
+
+    private Transfer recordedTransfer(DSLContext ctx, String idempotencyKey) {
+        return ctx.selectFrom(TRANSFER
+                .join(fromAcc).onKey(TRANSFER.FROM_ACC)
+                .join(toAcc).onKey(TRANSFER.TO_ACC)
+                .join(IDEMPOTENCY_KEY).on(IDEMPOTENCY_KEY.TRANSFER_ID.eq(TRANSFER.ID)))
+                .where(IDEMPOTENCY_KEY.ID.eq(idempotencyKey))
+                .fetchOne(new TransferRecordMapper());
+    }
+
+    private Transfer transferAmount(DSLContext ctx, TransferRequest trReq) {
+        //Amounts leave cents only here, at the database boundary
+        BigDecimal amount = Money.toBigDecimal(trReq.amount);
+
+        if (stripes.isStriped(trReq.fromAcc) || stripes.isStriped(trReq.toAcc))
+            return stripedTransferAmount(ctx, trReq, amount);
+
+        return mode == Mode.FAST ? fastTransferAmount(ctx, trReq, amount) :
+                classicTransferAmount(ctx, trReq, amount);
+    }
+
+    private Transfer stripedTransferAmount(DSLContext ctx, TransferRequest trReq, BigDecimal amount) {
+        long started = System.nanoTime();
+
+        if (stripes.debit(ctx, trReq.fromAcc, amount) != 1)
+            throw new DataAccessException("Referenced account with id: " + trReq.fromAcc + " does not exist");
+
+        int credited = stripes.isStriped(trReq.toAcc) ? stripes.credit(ctx, trReq.toAcc, amount) :
+                updateBalance(ctx, creditAccount, trReq.toAcc, amount);
+
+        if (credited != 1)
+            throw new DataAccessException("Referenced account with id: " + trReq.toAcc + " does not exist");
+
+        updateMicros.record(micros(started));
+
+        return insertTransfer(ctx, trReq, amount);
+    }
+
+    private Transfer fastTransferAmount(DSLContext ctx, TransferRequest trReq, BigDecimal amount) {
+        long started = System.nanoTime();
+
+        int updated = moveAmount.execute(ctx, update -> {
+            update.setLong(1, trReq.fromAcc);
+            update.setBigDecimal(2, amount);
+            update.setBigDecimal(3, amount);
+            update.setLong(4, trReq.fromAcc);
+            update.setLong(5, trReq.toAcc);
+
+            return update.executeUpdate();
+        });
+
+        if (updated != 2)
+            throw new DataAccessException("Referenced account with id: " + trReq.fromAcc + " or " + trReq.toAcc +
+                    " does not exist");
+
+        updateMicros.record(micros(started));
+
+        return insertTransfer(ctx, trReq, amount);
+    }
+
+    private Transfer insertTransfer(DSLContext ctx, TransferRequest trReq, BigDecimal amount) {
+        long started = System.nanoTime();
+
+        Transfer t = new Transfer();
+        t.fromAcc = new model.Account();
+        t.toAcc = new model.Account();
+
+        t.amount = amount;
+        Timestamp date = insert(ctx, trReq, amount, t);
+
+        AccountHistoryWriter.append(ctx, t.id, trReq.fromAcc, trReq.toAcc, date);
+
+        long inserted = System.nanoTime();
+        insertMicros.record(TimeUnit.NANOSECONDS.toMicros(inserted - started));
+
+        accountNumbers.execute(ctx, select -> {
+            select.setLong(1, trReq.fromAcc);
+            select.setLong(2, trReq.toAcc);
+
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    model.Account acc = rs.getLong(1) == trReq.fromAcc ? t.fromAcc : t.toAcc;
+                    acc.id = rs.getLong(1);
+                    acc.number = rs.getString(2);
+                }
+            }
+
+            return null;
+        });
+
+        rereadMicros.record(micros(inserted));
+
+        return t;
+    }
+
+    /**
+     * Inserts the transfer and sets its generated id and date to {@code t}.
+     */
+    private Timestamp insert(DSLContext ctx, TransferRequest trReq, BigDecimal amount, Transfer t) {
+        Timestamp date = insertTransfer.execute(ctx, insert -> {
+            insert.setLong(1, trReq.fromAcc);
+            insert.setLong(2, trReq.toAcc);
+            insert.setBigDecimal(3, amount);
+            insert.executeUpdate();
+
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                keys.next();
+                t.id = keys.getLong(1);
+
+                return keys.getTimestamp(2);
+            }
+        });
+
+        t.timestamp = date;
+
+        return date;
+    }
+
+    private static int updateBalance(DSLContext ctx, RenderedQuery query, long accId, BigDecimal amount) {
+        return query.execute(ctx, update -> {
+            update.setBigDecimal(1, amount);
+            update.setLong(2, accId);
+
+            return update.executeUpdate();
+        });
+    }
+
+    private Transfer classicTransferAmount(DSLContext ctx, TransferRequest trReq, BigDecimal amount) {
+        long started = System.nanoTime();
+
+        //Locked in ascending id order, as by transfer batches, so the lock order does not depend on the direction
+        lockAccounts.execute(ctx, select -> {
+            select.setLong(1, trReq.fromAcc);
+            select.setLong(2, trReq.toAcc);
+
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next())
+                    rs.getLong(1);
+            }
+
+            return null;
+        });
+
+        long locked = System.nanoTime();
+        lockMicros.record(TimeUnit.NANOSECONDS.toMicros(locked - started));
+
+        updateBalance(ctx, debitAccount, trReq.fromAcc, amount);
+        updateBalance(ctx, creditAccount, trReq.toAcc, amount);
+
+        long updated = System.nanoTime();
+        updateMicros.record(TimeUnit.NANOSECONDS.toMicros(updated - locked));
+
+        Transfer trRec = new Transfer();
+        Timestamp date = insert(ctx, trReq, amount, trRec);
+
+        AccountHistoryWriter.append(ctx, trRec.id, trReq.fromAcc, trReq.toAcc, date);
+
+        long inserted = System.nanoTime();
+        insertMicros.record(TimeUnit.NANOSECONDS.toMicros(inserted - updated));
+
+        Transfer t = transferById(ctx, trRec.id);
+
+        rereadMicros.record(micros(inserted));
+
+        return t;
+    }
+
+    private static long micros(long started) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+    }
+
+    private static Transfer transfer(ResultSet rs) throws SQLException {
+        Transfer t = new Transfer();
+        t.fromAcc = new model.Account();
+        t.toAcc = new model.Account();
+
+        t.id = rs.getLong(1);
+        t.amount = rs.getBigDecimal(2);
+        t.timestamp = rs.getTimestamp(3);
+
+        t.fromAcc.id = rs.getLong(4);
+        t.fromAcc.number = rs.getString(5);
+
+        t.toAcc.id = rs.getLong(6);
+        t.toAcc.number = rs.getString(7);
+
+        return t;
+    }
+
+    private class TransferRecordMapper implements RecordMapper<Record, Transfer> {
+        @Override
+        public Transfer map(Record record) {
+            Transfer t = new Transfer();
+            t.fromAcc = new model.Account();
+            t.toAcc = new model.Account();
+
+            t.id = record.get(TRANSFER.ID);
+            t.amount = record.get(TRANSFER.AMOUNT);
+            t.timestamp = record.get(TRANSFER.DATE);
+
+            t.fromAcc.id = record.get(fromAcc.ID);
+            t.fromAcc.number = record.get(fromAcc.NUMBER);
+
+            t.toAcc.id = record.get(toAcc.ID);
+            t.toAcc.number = record.get(toAcc.NUMBER);
+
+            return t;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package services;
+
+import metrics.Counter;
+import metrics.Metrics;
+import model.Transfer;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of recent idempotency keys, holding at most {@code maxKeys} keys for at most {@code ttlMillis}.
+ *
+ * The first request of a key runs the transfer, later requests of the key get its result, waiting for it while the
+ * transfer is still in progress. A failed transfer is forgotten, so it can be retried with the same key.
+ */
+public class IdempotencyIndex {
+    private final Counter replays = Metrics.counter("idempotency_index_replays");
+    private final Counter evictions = Metrics.counter("idempotency_index_evictions");
+
+    private final int maxKeys;
+    private final long ttlNanos;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    //Keys in insertion order, which is expiration order too
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+
+    public IdempotencyIndex(int maxKeys, long ttlMillis) {
+        if (maxKeys <= 0)
+            throw new IllegalArgumentException("Max keys: " + maxKeys + " must be positive");
+
+        this.maxKeys = maxKeys;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public Transfer execute(String key, Supplier<Transfer> transfer) {
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, now + ttlNanos);
+
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (existing.expiresAt - now > 0) {
+                replays.inc();
+                return await(existing.result);
+            }
+
+            entries.remove(key, existing);
+        }
+
+        order.add(entry);
+        ordered.incrementAndGet();
+        evict(now);
+
+        try {
+            Transfer t = transfer.get();
+            entry.result.complete(t);
+
+            return t;
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        Entry head;
+        while ((head = order.peek()) != null && (ordered.get() > maxKeys || head.expiresAt - now <= 0)) {
+            if (!order.remove(head))
+                continue;
+
+            ordered.decrementAndGet();
+            if (entries.remove(head.key, head))
+                evictions.inc();
+        }
+    }
+
+    private static Transfer await(CompletableFuture<Transfer> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final long expiresAt;
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+
+        Entry(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
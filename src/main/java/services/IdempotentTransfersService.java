@@ -0,0 +1,65 @@
+package services;
+
+import model.Money;
+import model.Transfer;
+import model.TransferRequest;
+import model.Validator;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Puts an {@link IdempotencyIndex} in front of transfers with an idempotency key, so retries of recent keys are
+ * answered from memory without reaching the underlying service, which remains responsible for older keys.
+ */
+public class IdempotentTransfersService implements TransfersService {
+    private final TransfersService delegate;
+    private final IdempotencyIndex index;
+
+    public IdempotentTransfersService(TransfersService delegate, IdempotencyIndex index) {
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public List<Transfer> getAllTransfers() {
+        return delegate.getAllTransfers();
+    }
+
+    @Override
+    public List<Transfer> getTransfers(long after, int limit) {
+        return delegate.getTransfers(after, limit);
+    }
+
+    @Override
+    public void forEachTransfer(long after, Consumer<Transfer> action) {
+        delegate.forEachTransfer(after, action);
+    }
+
+    @Override
+    public Transfer getTransfer(long transferId) {
+        return delegate.getTransfer(transferId);
+    }
+
+    @Override
+    public Transfer transferAmount(TransferRequest trReq) {
+        return delegate.transferAmount(trReq);
+    }
+
+    @Override
+    public Transfer transferAmount(TransferRequest trReq, String idempotencyKey) {
+        Transfer t = index.execute(idempotencyKey, () -> delegate.transferAmount(trReq, idempotencyKey));
+
+        if (t.fromAcc.id != trReq.fromAcc || t.toAcc.id != trReq.toAcc ||
+                Money.of(t.amount) != trReq.amount)
+            throw new Validator.ValidationException("Idempotency key: " + idempotencyKey +
+                    " was already used for another transfer");
+
+        return t;
+    }
+
+    @Override
+    public List<TransferBatchItem> transferAmounts(List<TransferRequest> trReqs, boolean atomic) {
+        return delegate.transferAmounts(trReqs, atomic);
+    }
+}
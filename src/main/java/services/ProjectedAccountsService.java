@@ -0,0 +1,85 @@
+package services;
+
+import model.Account;
+import model.AccountCreation;
+import model.Transfer;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Serves accounts from the snapshots of a {@link BalanceProjection} instead of the underlying service, which remains
+ * responsible for creating accounts and for their transfers. Accounts not in the snapshot yet, having just been
+ * created, are read from the underlying service.
+ */
+public class ProjectedAccountsService implements AccountsService {
+    private final AccountsService delegate;
+    private final BalanceProjection projection;
+
+    public ProjectedAccountsService(AccountsService delegate, BalanceProjection projection) {
+        this.delegate = delegate;
+        this.projection = projection;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return projection.snapshot().accounts(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Account> getAccounts(long after, int limit) {
+        return projection.snapshot().accounts(after, limit);
+    }
+
+    @Override
+    public void forEachAccount(long after, Consumer<Account> action) {
+        projection.snapshot().forEach(after, action);
+    }
+
+    @Override
+    public Account createAccount(AccountCreation acc) {
+        Account created = delegate.createAccount(acc);
+        projection.created(created);
+
+        return created;
+    }
+
+    @Override
+    public List<Long> createAccounts(List<AccountCreation> accs) {
+        List<Long> ids = delegate.createAccounts(accs);
+
+        for (int i = 0; i < ids.size(); i++) {
+            Account created = new Account();
+            created.id = ids.get(i);
+            created.number = accs.get(i).number;
+            created.balance = accs.get(i).balance.setScale(2, RoundingMode.HALF_DOWN);
+
+            projection.created(created);
+        }
+
+        return ids;
+    }
+
+    @Override
+    public Account getAccount(long accId) {
+        Account acc = projection.snapshot().account(accId);
+
+        return acc != null ? acc : delegate.getAccount(accId);
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId) {
+        return delegate.getAccountTransfers(accId);
+    }
+
+    @Override
+    public List<Transfer> getAccountTransfers(long accId, long before, int limit) {
+        return delegate.getAccountTransfers(accId, before, limit);
+    }
+
+    @Override
+    public long balancesVersion() {
+        return projection.snapshot().version;
+    }
+}
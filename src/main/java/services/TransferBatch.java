@@ -0,0 +1,179 @@
+package services;
+
+import model.Account;
+import model.Money;
+import model.Transfer;
+import model.TransferRequest;
+import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static db.tables.Account.ACCOUNT;
+
+/**
+ * Applies many transfers in the current transaction with batched statements.
+ *
+ * All accounts touched by the batch are locked in ascending id order and the transfers are checked against their
+ * balances in memory, so a transfer failing on an unknown account or an insufficient balance is rejected on its own
+ * without failing the statements of the others. Striped accounts get the balance of their stripes collected into the
+ * ACCOUNT row first, which is the only row the batch updates.
+ */
+class TransferBatch {
+    private static final String UPDATE_BALANCE = "UPDATE ACCOUNT SET BALANCE = BALANCE + ? WHERE ID = ?";
+    private static final String INSERT_TRANSFER = "INSERT INTO TRANSFER (FROM_ACC, TO_ACC, AMOUNT, DATE) VALUES (?, ?, ?, ?)";
+
+    private final BalanceStripes stripes;
+
+    TransferBatch(BalanceStripes stripes) {
+        this.stripes = stripes;
+    }
+
+    static long[] accountIds(List<? extends TransferBatchItem> items) {
+        long[] accIds = new long[2 * items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            accIds[2 * i] = items.get(i).request.fromAcc;
+            accIds[2 * i + 1] = items.get(i).request.toAcc;
+        }
+
+        return accIds;
+    }
+
+    /**
+     * Sets the transfer or the error of every item, the transfers are made once the transaction commits.
+     */
+    void apply(DSLContext ctx, List<? extends TransferBatchItem> items) {
+        for (TransferBatchItem item : items) {
+            item.transfer = null;
+            item.error = null;
+        }
+
+        TreeSet<Long> ids = new TreeSet<>();
+        for (TransferBatchItem item : items) {
+            ids.add(item.request.fromAcc);
+            ids.add(item.request.toAcc);
+        }
+
+        Map<Long, BatchAccount> accounts = new HashMap<>();
+        for (Account acc : ctx.selectFrom(ACCOUNT).where(ACCOUNT.ID.in(ids)).orderBy(ACCOUNT.ID)
+                .forUpdate().fetchInto(Account.class)) {
+            if (stripes.isStriped(acc.id))
+                acc.balance = acc.balance.add(stripes.collect(ctx, acc.id));
+
+            accounts.put(acc.id, new BatchAccount(acc));
+        }
+
+        List<TransferBatchItem> accepted = new ArrayList<>(items.size());
+        for (TransferBatchItem item : items) {
+            TransferRequest trReq = item.request;
+            BatchAccount from = accounts.get(trReq.fromAcc);
+            BatchAccount to = accounts.get(trReq.toAcc);
+
+            if (from == null || to == null) {
+                item.error = new DataAccessException("Referenced account with id: " +
+                        (from == null ? trReq.fromAcc : trReq.toAcc) + " does not exist");
+            } else if (trReq.amount <= 0) {
+                item.error = new DataAccessException("Transfer amount: " + Money.toString(trReq.amount) +
+                        " must be positive");
+            } else if (from.balance < trReq.amount) {
+                item.error = new DataAccessException("Insufficient balance on account with id: " + from.acc.id);
+            } else {
+                from.balance -= trReq.amount;
+                to.balance = Math.addExact(to.balance, trReq.amount);
+
+                item.transfer = newTransfer(from.acc, to.acc, Money.toBigDecimal(trReq.amount));
+                accepted.add(item);
+            }
+        }
+
+        Map<Long, BigDecimal> deltas = new HashMap<>();
+        for (BatchAccount acc : accounts.values()) {
+            if (acc.balance != acc.initialBalance)
+                deltas.put(acc.acc.id, Money.toBigDecimal(acc.balance - acc.initialBalance));
+        }
+
+        if (!accepted.isEmpty())
+            ctx.connection(c -> insertBatch(c, deltas, accepted));
+    }
+
+    private static void insertBatch(Connection c, Map<Long, BigDecimal> deltas, List<TransferBatchItem> accepted)
+            throws Exception {
+        try (PreparedStatement update = c.prepareStatement(UPDATE_BALANCE)) {
+            for (Map.Entry<Long, BigDecimal> delta : deltas.entrySet()) {
+                update.setBigDecimal(1, delta.getValue());
+                update.setLong(2, delta.getKey());
+                update.addBatch();
+            }
+
+            update.executeBatch();
+        }
+
+        Timestamp date = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement insert = c.prepareStatement(INSERT_TRANSFER, new String[]{"ID"})) {
+            for (TransferBatchItem item : accepted) {
+                insert.setLong(1, item.transfer.fromAcc.id);
+                insert.setLong(2, item.transfer.toAcc.id);
+                insert.setBigDecimal(3, item.transfer.amount);
+                insert.setTimestamp(4, date);
+                insert.addBatch();
+            }
+
+            insert.executeBatch();
+
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                for (TransferBatchItem item : accepted) {
+                    keys.next();
+
+                    item.transfer.id = keys.getLong(1);
+                    item.transfer.timestamp = date;
+                }
+            }
+        }
+
+        List<Transfer> transfers = new ArrayList<>(accepted.size());
+        for (TransferBatchItem item : accepted)
+            transfers.add(item.transfer);
+
+        AccountHistoryWriter.appendBatch(c, transfers);
+    }
+
+    /**
+     * Account locked by the batch, with its balance in cents as the transfers of the batch leave it.
+     */
+    private static class BatchAccount {
+        final Account acc;
+        final long initialBalance;
+        long balance;
+
+        BatchAccount(Account acc) {
+            this.acc = acc;
+            this.initialBalance = Money.of(acc.balance);
+            this.balance = initialBalance;
+        }
+    }
+
+    private static Transfer newTransfer(Account from, Account to, BigDecimal amount) {
+        Transfer t = new Transfer();
+        t.fromAcc = new Account();
+        t.toAcc = new Account();
+
+        t.amount = amount;
+
+        t.fromAcc.id = from.id;
+        t.fromAcc.number = from.number;
+
+        t.toAcc.id = to.id;
+        t.toAcc.number = to.number;
+
+        return t;
+    }
+}
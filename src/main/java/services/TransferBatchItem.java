@@ -0,0 +1,18 @@
+package services;
+
+import model.Transfer;
+import model.TransferRequest;
+
+/**
+ * Outcome of one request of a transfer batch: the made {@code transfer}, or the {@code error} it failed with.
+ */
+public class TransferBatchItem {
+    public final TransferRequest request;
+
+    public Transfer transfer;
+    public RuntimeException error;
+
+    public TransferBatchItem(TransferRequest request) {
+        this.request = request;
+    }
+}
@@ -0,0 +1,108 @@
+package services;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Queues the transfers of this JVM touching the same accounts behind each other, so they do not run into each other
+ * in the database, where they would wait on its row locks or, with MVCC, be rolled back on a conflict and retried.
+ * Disabled when created with a non-positive number of stripes.
+ *
+ * Accounts map to {@code stripes} fair locks, which a transfer holds while its transaction runs. The locks of a
+ * transfer are taken in ascending stripe order, so transfers in opposite directions between the same accounts wait for
+ * each other in arrival order and never deadlock. Transfers finding a lock taken are counted in
+ * {@code transfers_scheduler_waits} and their waiting time is recorded in {@code transfers_scheduler_wait_micros}.
+ *
+ * Batches touching more than {@code maxCallStripes} stripes would stall most other transfers while their transaction
+ * runs, they are left to the database locks instead and counted in {@code transfers_scheduler_unscheduled}.
+ */
+public class TransferScheduler {
+    public static final int DEFAULT_MAX_CALL_STRIPES = 64;
+
+    private final Counter waits = Metrics.counter("transfers_scheduler_waits");
+    private final Histogram waitMicros = Metrics.histogram("transfers_scheduler_wait_micros");
+    private final Counter unscheduled = Metrics.counter("transfers_scheduler_unscheduled");
+
+    private final ReentrantLock[] locks;
+    private final int maxCallStripes;
+
+    public TransferScheduler(int stripes) {
+        this(stripes, DEFAULT_MAX_CALL_STRIPES);
+    }
+
+    public TransferScheduler(int stripes, int maxCallStripes) {
+        this.maxCallStripes = maxCallStripes;
+
+        locks = new ReentrantLock[Math.max(stripes, 0)];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock(true);
+    }
+
+    public static TransferScheduler disabled() {
+        return new TransferScheduler(0);
+    }
+
+    /**
+     * Runs the transfer once no other transfer touching any of the accounts is running. Locks are reentrant, so the
+     * transfer may run other transfers of the same accounts. A transfer of more than {@code maxCallStripes} stripes
+     * runs right away.
+     */
+    public <T> T call(Supplier<T> transfer, long... accIds) {
+        if (locks.length == 0)
+            return transfer.get();
+
+        int[] stripes = stripes(accIds);
+        if (stripes.length > maxCallStripes) {
+            unscheduled.inc();
+            return transfer.get();
+        }
+
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++)
+                lock(locks[stripes[locked]]);
+
+            return transfer.get();
+        } finally {
+            while (locked > 0)
+                locks[stripes[--locked]].unlock();
+        }
+    }
+
+    private void lock(ReentrantLock lock) {
+        //A free lock with queued transfers is about to be handed to the first of them
+        if (!lock.hasQueuedThreads() && lock.tryLock())
+            return;
+
+        waits.inc();
+
+        long started = System.nanoTime();
+        lock.lock();
+        waitMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+    }
+
+    /**
+     * Distinct stripes of the accounts in ascending order.
+     */
+    private int[] stripes(long[] accIds) {
+        int[] stripes = new int[accIds.length];
+        for (int i = 0; i < accIds.length; i++)
+            stripes[i] = (int) Math.floorMod(accIds[i], (long) locks.length);
+
+        Arrays.sort(stripes);
+
+        int distinct = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1])
+                stripes[distinct++] = stripes[i];
+        }
+
+        return distinct == stripes.length ? stripes : Arrays.copyOf(stripes, distinct);
+    }
+}
@@ -1,92 +1,38 @@
 package services;
 
-import db.MemoryDatabase;
-import db.tables.Account;
-import db.tables.records.TransferRecord;
 import model.Transfer;
 import model.TransferRequest;
-import org.jooq.Record;
-import org.jooq.RecordMapper;
-import org.jooq.impl.DSL;
 
 import java.util.List;
+import java.util.function.Consumer;
 
-import static db.tables.Account.ACCOUNT;
-import static db.tables.Transfer.TRANSFER;
+public interface TransfersService {
+    List<Transfer> getAllTransfers();
 
-public class TransfersService {
-    private final MemoryDatabase db;
+    /**
+     * Returns up to {@code limit} transfers following transfer {@code after} (or the newest transfers if it is not
+     * positive), newest first.
+     */
+    List<Transfer> getTransfers(long after, int limit);
 
-    private final Account fromAcc = ACCOUNT.as("fromAcc");
-    private final Account toAcc = ACCOUNT.as("toAcc");
+    /**
+     * Passes all transfers following transfer {@code after} to {@code action}, newest first, without loading them
+     * all into memory.
+     */
+    void forEachTransfer(long after, Consumer<Transfer> action);
 
-    public TransfersService(MemoryDatabase db) {
-        this.db = db;
-    }
+    Transfer getTransfer(long transferId);
 
-    public List<Transfer> getAllTransfers() {
-        return db.ctx().selectFrom(TRANSFER
-                .join(fromAcc).onKey(TRANSFER.FROM_ACC)
-                .join(toAcc).onKey(TRANSFER.TO_ACC))
-                .orderBy(TRANSFER.DATE.desc())
-                .fetch(new TransferRecordMapper());
-    }
+    Transfer transferAmount(TransferRequest trReq);
 
-    public Transfer getTransfer(long transferId) {
-        return db.ctx().selectFrom(TRANSFER
-                .join(fromAcc).onKey(TRANSFER.FROM_ACC)
-                .join(toAcc).onKey(TRANSFER.TO_ACC))
-                .where(TRANSFER.ID.eq(transferId))
-                .fetchSingle(new TransferRecordMapper());
-    }
+    /**
+     * Makes the transfer only once per idempotency key, repeating a key returns the transfer made for it before.
+     */
+    Transfer transferAmount(TransferRequest trReq, String idempotencyKey);
 
-    public Transfer transferAmount(TransferRequest trReq) {
-        return db.ctx().transactionResult(configuration -> {
-            DSL.using(configuration)
-                    .selectFrom(ACCOUNT).where(ACCOUNT.ID.eq(trReq.fromAcc).or(ACCOUNT.ID.eq(trReq.toAcc)))
-                    .forUpdate().fetchInto(model.Account.class);
-
-            DSL.using(configuration)
-                    .update(ACCOUNT)
-                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(trReq.amount))
-                    .where(ACCOUNT.ID.eq(trReq.fromAcc))
-                    .execute();
-
-            DSL.using(configuration)
-                    .update(ACCOUNT)
-                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(trReq.amount))
-                    .where(ACCOUNT.ID.eq(trReq.toAcc))
-                    .execute();
-
-            TransferRecord trRec = DSL.using(configuration)
-                    .insertInto(TRANSFER, TRANSFER.FROM_ACC, TRANSFER.TO_ACC, TRANSFER.AMOUNT)
-                    .values(trReq.fromAcc, trReq.toAcc, trReq.amount)
-                    .returning(TRANSFER.ID).fetchOne();
-
-            return DSL.using(configuration).selectFrom(TRANSFER.join(fromAcc).onKey(TRANSFER.FROM_ACC).join(toAcc).onKey(TRANSFER.TO_ACC))
-                    .where(TRANSFER.ID.eq(trRec.getId()))
-                    .fetchSingle(new TransferRecordMapper());
-        });
-    }
-
-    private class TransferRecordMapper implements RecordMapper<Record, Transfer> {
-        @Override
-        public Transfer map(Record record) {
-            Transfer t = new Transfer();
-            t.fromAcc = new model.Account();
-            t.toAcc = new model.Account();
-
-            t.id = record.get(TRANSFER.ID);
-            t.amount = record.get(TRANSFER.AMOUNT);
-            t.timestamp = record.get(TRANSFER.DATE);
-
-            t.fromAcc.id = record.get(fromAcc.ID);
-            t.fromAcc.number = record.get(fromAcc.NUMBER);
-
-            t.toAcc.id = record.get(toAcc.ID);
-            t.toAcc.number = record.get(toAcc.NUMBER);
-
-            return t;
-        }
-    }
+    /**
+     * Makes the transfers in request order, returning the outcome of each. With {@code atomic} either all transfers
+     * are made or none, the transfers not failing on their own then fail with {@link BatchAbortedException}.
+     */
+    List<TransferBatchItem> transferAmounts(List<TransferRequest> trReqs, boolean atomic);
 }
@@ -0,0 +1,55 @@
+package db;
+
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConflictRetryTest {
+    private final ConflictRetry retry = new ConflictRetry(3, 1);
+
+    @Test
+    void testCall_WhenConflictsBelowLimit_ReturnResult() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = retry.call(() -> {
+            if (attempts.incrementAndGet() < 3)
+                throw conflict();
+
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void testCall_WhenConflictsAboveLimit_ThrowConflict() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DataAccessException.class, () -> retry.call(() -> {
+            attempts.incrementAndGet();
+            throw conflict();
+        }));
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    void testCall_WhenOtherDataAccessError_DoNotRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DataAccessException.class, () -> retry.call(() -> {
+            attempts.incrementAndGet();
+            throw new DataAccessException("Insufficient balance on account with id: 1");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    private static DataAccessException conflict() {
+        return new DataAccessException("Conflict", new SQLException("transaction rollback: serialization failure", "40001"));
+    }
+}
@@ -0,0 +1,71 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static db.tables.Account.ACCOUNT;
+import static db.tables.AccountHistory.ACCOUNT_HISTORY;
+import static db.tables.Transfer.TRANSFER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static services.Fixtures.balance;
+
+class DatabaseImageTest {
+    private final DatabaseConfig config = new DatabaseConfig();
+
+    @Test
+    void testPrebuiltImage_WhenCapturedFromScript_IsUpToDate() throws IOException {
+        DatabaseConfig scriptConfig = new DatabaseConfig();
+        scriptConfig.image = null;
+
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        DatabaseImage.capture(new MemoryDatabase(scriptConfig)).write(captured);
+
+        assertArrayEquals(resource(config.image), captured.toByteArray(),
+                "Regenerate the image with: java db.DatabaseImage src/main/resources" + config.image);
+    }
+
+    @Test
+    void testNewDatabase_WhenOpenedFromImage_HasSeedDataAndIsIsolated() {
+        MemoryDatabase db1 = new MemoryDatabase(config);
+        MemoryDatabase db2 = new MemoryDatabase(config);
+
+        db1.ctx().update(ACCOUNT).set(ACCOUNT.BALANCE, BigDecimal.ZERO).where(ACCOUNT.ID.eq(1L)).execute();
+
+        assertEquals(new BigDecimal("0.00"), balance(db1, 1));
+        assertEquals(new BigDecimal("300.00"), balance(db2, 1));
+        assertEquals(3, db2.ctx().fetchCount(TRANSFER));
+    }
+
+    @Test
+    void testRestore_WhenRowsChanged_ResetRowsAndIdentities() {
+        MemoryDatabase db = new MemoryDatabase(config);
+        db.ctx().insertInto(ACCOUNT, ACCOUNT.NUMBER, ACCOUNT.BALANCE).values("acc4", BigDecimal.TEN).execute();
+        db.ctx().deleteFrom(ACCOUNT_HISTORY).execute();
+        db.ctx().update(ACCOUNT).set(ACCOUNT.BALANCE, BigDecimal.ZERO).execute();
+
+        DatabaseImage.resource(config.image).restore(db);
+
+        assertEquals(Arrays.asList(new BigDecimal("300.00"), new BigDecimal("400.00"), new BigDecimal("1000.00")),
+                db.ctx().select(ACCOUNT.BALANCE).from(ACCOUNT).orderBy(ACCOUNT.ID).fetch(ACCOUNT.BALANCE));
+        assertEquals(6, db.ctx().fetchCount(ACCOUNT_HISTORY));
+        assertEquals(Long.valueOf(4), db.ctx().insertInto(ACCOUNT, ACCOUNT.NUMBER, ACCOUNT.BALANCE)
+                .values("acc4", BigDecimal.TEN).returning(ACCOUNT.ID).fetchOne().getId());
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = DatabaseImage.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer))
+                bytes.write(buffer, 0, read);
+
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package db;
+
+import metrics.Metrics;
+import org.hsqldb.jdbc.JDBCPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstrumentedDataSourceTest {
+    private static final String SELECT_ACCOUNT = "SELECT ID FROM ACCOUNT WHERE ID = ?";
+
+    private JDBCPool pool;
+    private InstrumentedDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        pool = new JDBCPool(2);
+        pool.setUrl(new DatabaseConfig().url);
+
+        dataSource = new InstrumentedDataSource(pool, 2, 50);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close(0);
+    }
+
+    @Test
+    void testGetConnection_WhenClosedTwice_ReleaseOnce() throws Exception {
+        Connection c = dataSource.getConnection();
+
+        assertEquals(1, dataSource.activeConnections());
+
+        c.close();
+        c.close();
+
+        assertEquals(0, dataSource.activeConnections());
+        assertEquals(0, dataSource.idleConnections());
+    }
+
+    @Test
+    void testGetConnection_WhenPoolExhausted_ThrowAfterTimeout() throws Exception {
+        long timeouts = Metrics.counter("db_pool_acquire_timeouts").get();
+
+        try (Connection c1 = dataSource.getConnection(); Connection c2 = dataSource.getConnection()) {
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        }
+
+        assertEquals(timeouts + 1, Metrics.counter("db_pool_acquire_timeouts").get());
+
+        try (Connection c = dataSource.getConnection()) {
+            assertEquals(1, dataSource.activeConnections());
+        }
+    }
+
+    @Test
+    void testGetConnection_WhenStatementCacheEnabled_ReuseStatementsOfReturnedConnection() throws Exception {
+        InstrumentedDataSource caching = new InstrumentedDataSource(pool, 1, 50, 2);
+
+        Connection returned;
+        PreparedStatement statement;
+        try (Connection c = caching.getConnection()) {
+            returned = c;
+            statement = c.unwrap(StatementCache.class).prepare(SELECT_ACCOUNT);
+
+            assertEquals(0, caching.idleConnections());
+        }
+
+        assertEquals(1, caching.idleConnections());
+        assertEquals(1, Metrics.gauges().get("db_pool_idle_connections").getAsLong());
+
+        long prepared = Metrics.counter("db_statements_prepared").get();
+
+        try (Connection c = caching.getConnection()) {
+            assertSame(statement, c.unwrap(StatementCache.class).prepare(SELECT_ACCOUNT));
+
+            statement.setLong(1, 1);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertTrue(rs.next());
+            }
+        }
+
+        assertEquals(prepared, Metrics.counter("db_statements_prepared").get());
+        assertTrue(returned.isClosed());
+        assertThrows(SQLException.class, () -> returned.prepareStatement(SELECT_ACCOUNT));
+    }
+
+    @Test
+    void testPrepare_WhenCacheFull_CloseLeastRecentlyUsed() throws Exception {
+        try (Connection c = new InstrumentedDataSource(pool, 1, 50, 2).getConnection()) {
+            StatementCache statements = c.unwrap(StatementCache.class);
+
+            PreparedStatement first = statements.prepare(SELECT_ACCOUNT);
+            PreparedStatement second = statements.prepare(SELECT_ACCOUNT + " + 0");
+            statements.prepare(SELECT_ACCOUNT);
+            statements.prepare(SELECT_ACCOUNT + " + 1");
+
+            assertFalse(first.isClosed());
+            assertTrue(second.isClosed());
+            assertEquals(2, statements.size());
+        }
+    }
+}
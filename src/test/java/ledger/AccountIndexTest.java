@@ -0,0 +1,62 @@
+package ledger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AccountIndexTest {
+    @Test
+    void testPut_WhenGrownOverManyPages_FindEveryAccount() {
+        AccountIndex index = new AccountIndex(2);
+
+        for (long id = 1; id <= 200_000; id++)
+            index.put(id * 7919, "acc-" + id, id * 100);
+
+        assertEquals(200_000, index.size());
+        for (long id = 1; id <= 200_000; id++) {
+            long slot = index.find(id * 7919);
+
+            assertEquals(id * 7919, index.id(slot));
+            assertEquals(id * 100, index.balance(slot));
+            assertEquals("acc-" + id, index.number(slot));
+        }
+
+        assertEquals(-1, index.find(3));
+    }
+
+    @Test
+    void testPut_WhenIdPresent_ReplaceAccount() {
+        AccountIndex index = new AccountIndex();
+
+        index.put(5, "old", 100);
+        long slot = index.put(5, "new é", 200);
+
+        assertEquals(1, index.size());
+        assertEquals(slot, index.find(5));
+        assertEquals("new é", index.number(slot));
+        assertEquals(200, index.balance(slot));
+
+        index.put(5, "new é", 300);
+        assertEquals("new é", index.number(slot));
+        assertEquals(300, index.balance(slot));
+
+        char[] tooLong = new char[0x10000];
+        Arrays.fill(tooLong, 'a');
+        assertThrows(IllegalArgumentException.class, () -> index.put(6, new String(tooLong), 0));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testBalance_WhenSet_ReadBack() {
+        AccountIndex index = new AccountIndex();
+        long slot = index.put(Long.MAX_VALUE, "max", 0);
+
+        index.balance(slot, -1);
+
+        assertEquals(-1, index.balance(index.find(Long.MAX_VALUE)));
+        assertThrows(IllegalArgumentException.class, () -> index.put(0, "zero", 0));
+    }
+}
@@ -0,0 +1,134 @@
+package ledger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalTest {
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void testReplay_WhenRecordsSpanSegments_ReturnAllRecordsInOrder() throws IOException {
+        try (Journal journal = new Journal(dir, 64)) {
+            for (int i = 0; i < 10; i++)
+                journal.awaitDurable(journal.append(("record-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 1);
+        }
+
+        try (Journal journal = new Journal(dir, 64)) {
+            List<String> records = replay(journal, 0);
+
+            assertEquals(10, records.size());
+            assertEquals("record-0", records.get(0));
+            assertEquals("record-9", records.get(9));
+        }
+    }
+
+    @Test
+    void testReplay_WhenFromPosition_SkipEarlierRecords() {
+        long position;
+        try (Journal journal = new Journal(dir, 64)) {
+            journal.append("first".getBytes(StandardCharsets.UTF_8));
+            position = journal.append("second".getBytes(StandardCharsets.UTF_8));
+            journal.append("third".getBytes(StandardCharsets.UTF_8));
+            journal.append("fourth".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (Journal journal = new Journal(dir, 64)) {
+            assertEquals(Arrays.asList("third", "fourth"), replay(journal, position));
+        }
+    }
+
+    @Test
+    void testOpen_WhenTailIsTorn_CutItOffAndAppendAfterLastRecord() throws IOException {
+        long position;
+        try (Journal journal = new Journal(dir, 1024)) {
+            journal.append("first".getBytes(StandardCharsets.UTF_8));
+            position = journal.append("second".getBytes(StandardCharsets.UTF_8));
+        }
+
+        //A record header written without its bytes, as left by a crash in the middle of an append
+        try (FileChannel segment = FileChannel.open(dir.resolve(String.format("journal-%020d.log", 0)),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(4).putInt(12345).put(new byte[]{1, 2});
+            torn.flip();
+            segment.write(torn, position);
+        }
+
+        try (Journal journal = new Journal(dir, 1024)) {
+            assertEquals(position, journal.position());
+            assertEquals(Arrays.asList("first", "second"), replay(journal, 0));
+
+            journal.awaitDurable(journal.append("third".getBytes(StandardCharsets.UTF_8)));
+
+            assertEquals(Arrays.asList("first", "second", "third"), replay(journal, 0));
+        }
+    }
+
+    @Test
+    void testDeleteBefore_WhenSegmentsCovered_DeleteThemAndKeepTheRest() throws IOException {
+        try (Journal journal = new Journal(dir, 64)) {
+            for (int i = 0; i < 5; i++)
+                journal.awaitDurable(journal.append(("record-" + i).getBytes(StandardCharsets.UTF_8)));
+            long position = journal.position();
+            for (int i = 5; i < 10; i++)
+                journal.awaitDurable(journal.append(("record-" + i).getBytes(StandardCharsets.UTF_8)));
+
+            journal.deleteBefore(position);
+
+            assertTrue(journal.start() > 0 && journal.start() <= position);
+            assertEquals(Arrays.asList("record-5", "record-6", "record-7", "record-8", "record-9"),
+                    replay(journal, position));
+            assertEquals("record-3", replay(journal, journal.start()).get(0));
+        }
+
+        try (Journal journal = new Journal(dir, 64)) {
+            assertEquals("record-9", replay(journal, journal.start()).get(6));
+        }
+    }
+
+    private static List<String> replay(Journal journal, long from) {
+        List<String> records = new ArrayList<>();
+        journal.replay(from, record -> {
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+        });
+
+        return records;
+    }
+}
@@ -0,0 +1,332 @@
+package ledger;
+
+import db.MemoryDatabase;
+import model.Account;
+import model.AccountCreation;
+import model.Transfer;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.NoDataFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static services.Fixtures.request;
+
+class ShardedLedgerTest {
+    private ShardedLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new ShardedLedger(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.close();
+    }
+
+    @Test
+    void testTransferAmount_WhenSameShard_BalancesAreUpdated() {
+        long acc1 = createAccount("acc1", 300).id;
+        createAccount("acc2", 0);
+        createAccount("acc3", 0);
+        createAccount("acc4", 0);
+        long acc5 = createAccount("acc5", 400).id;
+
+        Transfer t = ledger.transferAmount(request(acc1, acc5, "100"));
+
+        assertEquals(acc1, t.fromAcc.id);
+        assertEquals("acc5", t.toAcc.number);
+        assertEquals(new BigDecimal("100.00"), t.amount);
+        assertEquals(new BigDecimal("200.00"), ledger.getAccount(acc1).balance);
+        assertEquals(new BigDecimal("500.00"), ledger.getAccount(acc5).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenCrossShard_BalancesAndHistoryAreUpdated() {
+        long acc1 = createAccount("acc1", 300).id;
+        long acc2 = createAccount("acc2", 400).id;
+
+        Transfer t = ledger.transferAmount(request(acc1, acc2, "100"));
+
+        assertEquals(new BigDecimal("200.00"), ledger.getAccount(acc1).balance);
+        assertEquals(new BigDecimal("500.00"), ledger.getAccount(acc2).balance);
+        assertEquals(t.id, ledger.getAccountTransfers(acc1).get(0).id);
+        assertEquals(t.id, ledger.getAccountTransfers(acc2).get(0).id);
+        assertEquals(t.id, ledger.getTransfer(t.id).id);
+    }
+
+    @Test
+    void testTransferAmount_WhenIdempotencyKeyRepeated_TransferOnce() {
+        long acc1 = createAccount("acc1", 300).id;
+        long acc2 = createAccount("acc2", 400).id;
+
+        Transfer first = ledger.transferAmount(request(acc1, acc2, "100"), "key-1");
+        Transfer second = ledger.transferAmount(request(acc1, acc2, "100"), "key-1");
+
+        assertEquals(first.id, second.id);
+        assertEquals(new BigDecimal("200.00"), ledger.getAccount(acc1).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenInsufficientBalance_ThrowDataAccessEx() {
+        long acc1 = createAccount("acc1", 300).id;
+        long acc2 = createAccount("acc2", 400).id;
+
+        assertThrows(DataAccessException.class, () -> ledger.transferAmount(request(acc1, acc2, "400")));
+        assertEquals(new BigDecimal("300.00"), ledger.getAccount(acc1).balance);
+        assertEquals(new BigDecimal("400.00"), ledger.getAccount(acc2).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenUnknownRecipient_ThrowDataAccessEx() {
+        long acc1 = createAccount("acc1", 300).id;
+
+        assertThrows(DataAccessException.class, () -> ledger.transferAmount(request(acc1, 902, "100")));
+        assertEquals(new BigDecimal("300.00"), ledger.getAccount(acc1).balance);
+    }
+
+    @Test
+    void testGetAccounts_WhenAfterAndLimit_ReturnPageAcrossShards() {
+        for (int i = 1; i <= 10; i++)
+            createAccount("acc" + i, 100);
+
+        List<Account> page = ledger.getAccounts(3, 4);
+
+        assertEquals(4, page.size());
+        assertEquals(4, page.get(0).id);
+        assertEquals(7, page.get(3).id);
+    }
+
+    @Test
+    void testGetTransfers_WhenAfter_ReturnOlderTransfers() {
+        long acc1 = createAccount("acc1", 300).id;
+        long acc2 = createAccount("acc2", 400).id;
+
+        Transfer t1 = ledger.transferAmount(request(acc1, acc2, "10"));
+        Transfer t2 = ledger.transferAmount(request(acc1, acc2, "20"));
+        Transfer t3 = ledger.transferAmount(request(acc1, acc2, "30"));
+
+        List<Transfer> page = ledger.getTransfers(t3.id, 10);
+
+        assertEquals(2, page.size());
+        assertEquals(t2.id, page.get(0).id);
+        assertEquals(t1.id, page.get(1).id);
+    }
+
+    @Test
+    void testGetAccount_WhenMissedId_ThrowNoDataFoundEx() {
+        assertThrows(NoDataFoundException.class, () -> ledger.getAccount(99999));
+    }
+
+    @Test
+    void testConcurrentTransfers_TotalBalanceIsPreserved() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            ids.add(createAccount("acc" + i, 1000).id);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            long from = ids.get(i);
+            long to = ids.get((i + 1) % ids.size());
+
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < 1000; j++) {
+                    try {
+                        ledger.transferAmount(request(from, to, "3"));
+                    } catch (DataAccessException ignored) {
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        BigDecimal total = ledger.getAllAccounts().stream().map(acc -> acc.balance).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(new BigDecimal("8000.00"), total);
+    }
+
+    @Test
+    void testOpen_WhenReopened_RecoverFromSnapshotAndJournalTail() throws IOException {
+        Path dir = Files.createTempDirectory("ledger");
+        MemoryDatabase db = new MemoryDatabase();
+
+        try {
+            long acc1;
+            long acc2;
+            Transfer keyed;
+            int accounts;
+            try (ShardedLedger persisted = ShardedLedger.open(dir, 4, 1 << 16, 60_000, db)) {
+                acc1 = createAccount(persisted, "acc1", 300).id;
+                acc2 = createAccount(persisted, "acc2", 400).id;
+                persisted.transferAmount(request(acc1, acc2, "100"));
+
+                persisted.snapshot();
+
+                keyed = persisted.transferAmount(request(acc2, acc1, "50"), "key-1");
+                createAccount(persisted, "acc3", 10);
+                accounts = persisted.getAllAccounts().size();
+            }
+
+            //Without the snapshot written on close the events following the previous one are replayed
+            List<Path> snapshots = files(dir, "snapshot-");
+            Files.delete(snapshots.get(snapshots.size() - 1));
+
+            try (ShardedLedger recovered = ShardedLedger.open(dir, 4, 1 << 16, 60_000, db)) {
+                assertEquals(new BigDecimal("250.00"), recovered.getAccount(acc1).balance);
+                assertEquals(new BigDecimal("450.00"), recovered.getAccount(acc2).balance);
+                assertEquals(accounts, recovered.getAllAccounts().size());
+                assertEquals(accounts + 1, createAccount(recovered, "acc4", 0).id);
+            }
+
+            try (ShardedLedger recovered = ShardedLedger.open(dir, 4, 1 << 16, 60_000, db)) {
+                assertEquals(keyed.id, recovered.transferAmount(request(acc2, acc1, "50"), "key-1").id);
+                assertEquals(new BigDecimal("250.00"), recovered.getAccount(acc1).balance);
+                assertEquals(accounts + 1, recovered.getAllAccounts().size());
+            }
+        } finally {
+            for (Path file : files(dir, ""))
+                Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void testOpen_WhenReopened_ForgetTransfersAndJournalBeforeSnapshots() throws IOException {
+        Path dir = Files.createTempDirectory("ledger");
+        MemoryDatabase db = new MemoryDatabase();
+
+        try {
+            Transfer old;
+            Transfer recent;
+            try (ShardedLedger persisted = ShardedLedger.open(dir, 4, 256, 60_000, db)) {
+                old = persisted.transferAmount(request(1, 2, "1"));
+                for (int i = 0; i < 10; i++)
+                    persisted.transferAmount(request(1, 2, "1"));
+                persisted.snapshot();
+
+                for (int i = 0; i < 10; i++)
+                    persisted.transferAmount(request(1, 2, "1"));
+                persisted.snapshot();
+
+                recent = persisted.transferAmount(request(1, 2, "1"));
+            }
+
+            assertFalse(files(dir, "journal-").get(0).endsWith(String.format("journal-%020d.log", 0)));
+
+            try (ShardedLedger recovered = ShardedLedger.open(dir, 4, 256, 60_000, db)) {
+                NoDataFoundException e = assertThrows(NoDataFoundException.class,
+                        () -> recovered.getTransfer(old.id));
+                assertTrue(e.getMessage().contains("no longer kept"));
+                assertThrows(NoDataFoundException.class, () -> recovered.getTransfer(recent.id));
+
+                assertEquals(new BigDecimal("278.00"), recovered.getAccount(1).balance);
+            }
+        } finally {
+            for (Path file : files(dir, ""))
+                Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void testTransferAmount_WhenJournalRejectsRecord_RefundDebit() throws IOException {
+        Path dir = Files.createTempDirectory("ledger");
+        MemoryDatabase db = new MemoryDatabase();
+
+        try {
+            String key = new String(new char[300]).replace('\0', 'k');
+
+            //Accounts 1 and 3 share a shard, accounts 1 and 2 do not
+            try (ShardedLedger persisted = ShardedLedger.open(dir, 2, 256, 60_000, db)) {
+                int transfers = persisted.getAccountTransfers(1).size();
+
+                assertThrows(IllegalArgumentException.class,
+                        () -> persisted.transferAmount(request(1, 3, "100"), key));
+                assertThrows(IllegalArgumentException.class,
+                        () -> persisted.transferAmount(request(1, 2, "100"), key));
+
+                assertEquals(new BigDecimal("300.00"), persisted.getAccount(1).balance);
+                assertEquals(new BigDecimal("400.00"), persisted.getAccount(2).balance);
+                assertEquals(new BigDecimal("1000.00"), persisted.getAccount(3).balance);
+                assertEquals(transfers, persisted.getAccountTransfers(1).size());
+
+                persisted.transferAmount(request(1, 2, "100"), "key");
+                assertEquals(new BigDecimal("200.00"), persisted.getAccount(1).balance);
+            }
+        } finally {
+            for (Path file : files(dir, ""))
+                Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void testSnapshot_WhenKeysOverLimit_KeepOnlyLatestKeys() throws IOException {
+        Path dir = Files.createTempDirectory("ledger");
+        MemoryDatabase db = new MemoryDatabase();
+
+        try {
+            Transfer latest;
+            try (ShardedLedger persisted = ShardedLedger.open(dir, 4, 1 << 16, 60_000, 1, 60_000, db)) {
+                persisted.transferAmount(request(1, 2, "10"), "key-1");
+                latest = persisted.transferAmount(request(1, 2, "10"), "key-2");
+            }
+
+            try (ShardedLedger recovered = ShardedLedger.open(dir, 4, 1 << 16, 60_000, 1, 60_000, db)) {
+                assertEquals(latest.id, recovered.transferAmount(request(1, 2, "10"), "key-2").id);
+                assertEquals(latest.id + 1, recovered.transferAmount(request(1, 2, "10"), "key-1").id);
+                assertEquals(new BigDecimal("270.00"), recovered.getAccount(1).balance);
+            }
+        } finally {
+            for (Path file : files(dir, ""))
+                Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    private Account createAccount(String number, long balance) {
+        return createAccount(ledger, number, balance);
+    }
+
+    private static Account createAccount(ShardedLedger ledger, String number, long balance) {
+        AccountCreation ac = new AccountCreation();
+        ac.number = number;
+        ac.balance = BigDecimal.valueOf(balance);
+
+        return ledger.createAccount(ac);
+    }
+
+    private static List<Path> files(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted(Comparator.naturalOrder())
+                    .collect(Collectors.toList());
+        }
+    }
+}
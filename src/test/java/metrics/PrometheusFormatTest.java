@@ -0,0 +1,50 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrometheusFormatTest {
+    @Test
+    void testBucketBound_WhenValueRecorded_ValueWithinOneEighthOfBound() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 100, 1_000, 123_456, 1L << 39}) {
+            int bucket = Histogram.bucket(value);
+            long bound = Histogram.bucketBound(bucket);
+
+            assertTrue(value <= bound, "value " + value + " above bound " + bound);
+            assertTrue(bucket == 0 || value > Histogram.bucketBound(bucket - 1));
+            assertTrue(bound - value <= value / Histogram.SUB_BUCKETS, "bound " + bound + " too far from " + value);
+        }
+
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testRender_WhenLabeledHistogram_RenderCumulativeBuckets() {
+        Histogram histogram = Metrics.histogram("test_render_micros{route=\"GET /x\"}");
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(100);
+
+        String text = PrometheusFormat.render();
+
+        assertTrue(text.contains("# TYPE test_render_micros histogram\n"));
+        assertTrue(text.contains("test_render_micros_bucket{route=\"GET /x\",le=\"3\"} 2\n"));
+        assertTrue(text.contains("test_render_micros_bucket{route=\"GET /x\",le=\"103\"} 3\n"));
+        assertTrue(text.contains("test_render_micros_bucket{route=\"GET /x\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_render_micros_sum{route=\"GET /x\"} 106\n"));
+        assertTrue(text.contains("test_render_micros_count{route=\"GET /x\"} 3\n"));
+    }
+
+    @Test
+    void testRender_WhenCounterAndGauge_RenderTypedSamples() {
+        Metrics.counter("test_render_total").add(5);
+        Metrics.gauge("test_render_active", () -> 7);
+
+        String text = PrometheusFormat.render();
+
+        assertTrue(text.contains("# TYPE test_render_total counter\ntest_render_total 5\n"));
+        assertTrue(text.contains("# TYPE test_render_active gauge\ntest_render_active 7\n"));
+    }
+}
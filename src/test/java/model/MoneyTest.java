@@ -0,0 +1,39 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+    @Test
+    void testParse_WhenMoreThanTwoDecimals_RoundHalfDownAsBigDecimal() {
+        for (String amount : new String[]{"0", "1", "100", "100.5", "100.50", "0.004", "0.005", "0.0051", "0.006",
+                "1.995", "1.9951", "-1.995", "-1.996", ".5", "5.", "+7.25", "1e2", "1.5E-1", "0.00500000000001",
+                "92233720368547758.07", "-92233720368547758.07", "0e999999999", "1e-999999999", "0.0009", "0.00099"})
+            assertEquals(Money.of(new BigDecimal(amount)), Money.parse(amount), amount);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String amount = random.nextInt(1_000_000) + "." + random.nextInt(100_000);
+
+            assertEquals(Money.of(new BigDecimal(amount)), Money.parse(amount), amount);
+        }
+    }
+
+    @Test
+    void testParse_WhenMalformedOrOutOfRange_ThrowNumberFormatEx() {
+        for (String amount : new String[]{"", "-", ".", "1.2.3", "1a", "abc", "92233720368547758.08",
+                "100000000000000000000", "1e30", "1e999999999", "-1E+2147483647"})
+            assertThrows(NumberFormatException.class, () -> Money.parse(amount), amount);
+    }
+
+    @Test
+    void testToBigDecimal_KeepScaleOfTwo() {
+        assertEquals(new BigDecimal("100.50"), Money.toBigDecimal(10050));
+        assertEquals("-0.01", Money.toString(-1));
+    }
+}
@@ -4,13 +4,14 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ValidatorTest {
     @Test
     void testValidateTransferRequest_WhenCorrectTranferRequest_NothingIsThrown() {
         TransferRequest trReq = new TransferRequest();
-        trReq.amount = BigDecimal.valueOf(400);
+        trReq.amount = 40000;
         trReq.fromAcc = 2;
         trReq.toAcc = 3;
 
@@ -25,7 +26,7 @@ class ValidatorTest {
     @Test
     void testValidateTransferRequest_WhenNegativeAmount_ThrowValidationEx() {
         TransferRequest trReq = new TransferRequest();
-        trReq.amount = BigDecimal.valueOf(-400);
+        trReq.amount = -40000;
         trReq.fromAcc = 2;
         trReq.toAcc = 3;
 
@@ -35,7 +36,7 @@ class ValidatorTest {
     @Test
     void testValidateTransferRequest_WhenEqualAccIds_ThrowValidationEx() {
         TransferRequest trReq = new TransferRequest();
-        trReq.amount = BigDecimal.valueOf(400);
+        trReq.amount = 40000;
         trReq.fromAcc = 2;
         trReq.toAcc = 2;
 
@@ -106,4 +107,21 @@ class ValidatorTest {
     void validateNumber_WhenUnparsableNumber_ThrowValidationEx() {
         assertThrows(Validator.ValidationException.class, () -> Validator.validateNumber("123xyz"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseNumber_WhenDecimalLong_ReturnSameAsParseLong() {
+        for (String number : new String[]{"0", "890", "+12", "-7", "9223372036854775807", "-9223372036854775808"})
+            assertEquals(Long.parseLong(number), Validator.parseNumber(number));
+    }
+
+    @Test
+    void testParseNumber_WhenMalformedOrOverflowing_ThrowValidationEx() {
+        for (String number : new String[]{null, "", "-", "+", "1-2", "12 ", "9223372036854775808", "-9223372036854775809"})
+            assertThrows(Validator.ValidationException.class, () -> Validator.parseNumber(number));
+    }
+
+    @Test
+    void testValidationException_WhenCreated_HasNoStackTrace() {
+        assertEquals(0, new Validator.ValidationException("Bad request").getStackTrace().length);
+    }
+}
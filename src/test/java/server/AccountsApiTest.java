@@ -1,6 +1,7 @@
 package server;
 
 import com.google.gson.Gson;
+import model.AccountImportResult;
 import model.ErrorMessage;
 import model.Transfer;
 import org.eclipse.jetty.client.api.ContentResponse;
@@ -24,11 +25,6 @@ class AccountsApiTest {
         TEST_ENV.setUp();
     }
 
-    @AfterEach
-    void tearDown() throws Exception {
-        TEST_ENV.tearDown();
-    }
-
     @AfterAll
     static void tearDownAll() throws Exception {
         TEST_ENV.tearDownAll();
@@ -45,6 +41,42 @@ class AccountsApiTest {
                 res.getContentAsString());
     }
 
+    @Test
+    void testGetAccounts_WhenAfterAndLimit_ReturnPage() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts?after=1&limit=1");
+
+        assertEquals("[{\"id\":2,\"number\":\"acc2\",\"balance\":400.00}]", res.getContentAsString());
+        assertEquals("</accounts?after=2&limit=1>; rel=\"next\"", res.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetAccounts_WhenNoPagingParameters_ReturnAllAccountsBeyondMaxLimit() throws Exception {
+        StringBuilder accounts = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            accounts.append("{\"number\":\"bulk").append(i).append("\",\"balance\":1}\n");
+        TEST_ENV.httpClient().POST("http://localhost:4567/accounts/bulk")
+                .content(new StringContentProvider(accounts.toString())).send();
+
+        ContentResponse all = TEST_ENV.httpClient().GET("http://localhost:4567/accounts");
+        ContentResponse page = TEST_ENV.httpClient().GET("http://localhost:4567/accounts?limit=1000");
+
+        assertEquals(1003, new Gson().fromJson(all.getContentAsString(), Object[].class).length);
+        assertEquals(null, all.getHeaders().get("Link"));
+        assertEquals(1000, new Gson().fromJson(page.getContentAsString(), Object[].class).length);
+        assertEquals("</accounts?after=1000&limit=1000>; rel=\"next\"", page.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetAccounts_WhenStreamed_ReturnAllAccounts() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts?stream=true");
+
+        assertEquals(
+                "[{\"id\":1,\"number\":\"acc1\",\"balance\":300.00}," +
+                        "{\"id\":2,\"number\":\"acc2\",\"balance\":400.00}," +
+                        "{\"id\":3,\"number\":\"acc3\",\"balance\":1000.00}]",
+                res.getContentAsString());
+    }
+
     @Test
     void testGetAccountById_ReturnAccountWithSameId() throws Exception {
         ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1");
@@ -95,6 +127,39 @@ class AccountsApiTest {
         Assertions.assertTrue(trs[1].timestamp.compareTo(trs[2].timestamp) >= 0);
     }
 
+    @Test
+    void testGetAccountTransfers_WhenLimit_ReturnNewestPageAndNextPageLink() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/2/transfers?limit=2");
+        Transfer[] trs = new Gson().fromJson(res.getContentAsString(), Transfer[].class);
+
+        assertEquals(2, trs.length);
+        assertEquals(3, trs[0].id);
+        assertEquals(2, trs[1].id);
+        assertEquals("</accounts/2/transfers?before=2&limit=2>; rel=\"next\"", res.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetAccountTransfers_WhenBefore_ReturnOlderTransfers() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/2/transfers?before=2&limit=2");
+        Transfer[] trs = new Gson().fromJson(res.getContentAsString(), Transfer[].class);
+
+        assertEquals(1, trs.length);
+        assertEquals(1, trs[0].id);
+        assertEquals(null, res.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetAccountTransfers_WhenTransferMade_ReturnItFirst() throws Exception {
+        TEST_ENV.httpClient().POST("http://localhost:4567/transfers")
+                .content(new StringContentProvider("{\"fromAcc\":3,\"toAcc\":1,\"amount\":10}")).send();
+
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1/transfers?limit=1");
+        Transfer[] trs = new Gson().fromJson(res.getContentAsString(), Transfer[].class);
+
+        assertEquals(4, trs[0].id);
+        assertEquals(3, trs[0].fromAcc.id);
+    }
+
     @Test
     void testGetAllTransfersForAccountById_WhenMissedId_ReturnNotFoundError() throws Exception {
         ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/99999/transfers");
@@ -182,4 +247,44 @@ class AccountsApiTest {
         assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, res.getStatus());
         assertEquals(e.msg, "Validation error");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testImportAccounts_WhenJsonArray_ReturnCreatedIds() throws Exception {
+        Request req = TEST_ENV.httpClient().POST("http://localhost:4567/accounts/bulk");
+        req.content(new StringContentProvider("[{\"number\":\"acc4\",\"balance\":700}," +
+                "{\"number\":\"acc5\",\"balance\":-1},{\"number\":\"acc6\",\"balance\":0}]"));
+        ContentResponse res = req.send();
+
+        AccountImportResult[] results = new Gson().fromJson(res.getContentAsString(), AccountImportResult[].class);
+
+        assertEquals(HttpStatus.OK_200, res.getStatus());
+        assertEquals(3, results.length);
+        assertEquals(HttpStatus.CREATED_201, results[0].status);
+        assertEquals(4, results[0].id);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, results[1].status);
+        assertEquals("Validation error", results[1].error.msg);
+        assertEquals(HttpStatus.CREATED_201, results[2].status);
+        assertEquals(5, results[2].id);
+
+        assertEquals("{\"id\":5,\"number\":\"acc6\",\"balance\":0.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/5").getContentAsString());
+    }
+
+    @Test
+    void testImportAccounts_WhenNdjson_ReturnCreatedIds() throws Exception {
+        Request req = TEST_ENV.httpClient().POST("http://localhost:4567/accounts/bulk");
+        req.content(new StringContentProvider("{\"number\":\"acc4\",\"balance\":700}\n" +
+                "{\"number\":\"acc5\",\"balance\":10.5}\n"));
+        ContentResponse res = req.send();
+
+        AccountImportResult[] results = new Gson().fromJson(res.getContentAsString(), AccountImportResult[].class);
+
+        assertEquals(2, results.length);
+        assertEquals(4, results[0].id);
+        assertEquals(5, results[1].id);
+        assertEquals(1, results[1].index);
+
+        assertEquals("{\"id\":5,\"number\":\"acc5\",\"balance\":10.50}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/5").getContentAsString());
+    }
+}
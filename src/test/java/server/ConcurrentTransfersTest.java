@@ -1,6 +1,7 @@
 package server;
 
 import db.MemoryDatabase;
+import model.Money;
 import model.TransferRequest;
 import org.hsqldb.jdbc.JDBCPool;
 import org.jooq.impl.DSL;
@@ -22,7 +23,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 /**
  * Not actually unit or functional test.
  *
- * This class tests only approach used for correct implementation of concurrent transfers: MVCC engine + exclusive locks.
+ * This class tests only approach used for correct implementation of concurrent transfers: exclusive locks of the
+ * default LOCKS transaction control.
  */
 public class ConcurrentTransfersTest {
     private MemoryDatabase db;
@@ -58,7 +60,7 @@ public class ConcurrentTransfersTest {
 
             tr.fromAcc = 1;
             tr.toAcc = 2;
-            tr.amount = BigDecimal.valueOf(100);
+            tr.amount = 10000;
 
             transferAmount("t1", tr);
         });
@@ -68,7 +70,7 @@ public class ConcurrentTransfersTest {
 
             tr.fromAcc = 2;
             tr.toAcc = 1;
-            tr.amount = BigDecimal.valueOf(200);
+            tr.amount = 20000;
 
             transferAmount("t2", tr);
         });
@@ -94,13 +96,13 @@ public class ConcurrentTransfersTest {
         System.out.println(thread + " " + System.currentTimeMillis() + " : tx started");
 
         db.ctx().transaction(configuration -> {
-            System.out.println(thread + " " + System.currentTimeMillis() + ": transfer " + trReq.amount + " " +
+            System.out.println(thread + " " + System.currentTimeMillis() + ": transfer " + Money.toString(trReq.amount) + " " +
                     "from = " + DSL.using(configuration).select(ACCOUNT.BALANCE).from(ACCOUNT).where(ACCOUNT.ID.eq(trReq.fromAcc)).fetchOne(ACCOUNT.BALANCE) + " " +
                     "to = " + DSL.using(configuration).select(ACCOUNT.BALANCE).from(ACCOUNT).where(ACCOUNT.ID.eq(trReq.toAcc)).fetchOne(ACCOUNT.BALANCE));
 
             DSL.using(configuration)
                     .update(ACCOUNT)
-                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(trReq.amount))
+                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.minus(Money.toBigDecimal(trReq.amount)))
                     .where(ACCOUNT.ID.eq(trReq.fromAcc))
                     .execute();
             System.out.println(thread + " " + System.currentTimeMillis() + " : after updated from = " +
@@ -110,7 +112,7 @@ public class ConcurrentTransfersTest {
 
             DSL.using(configuration)
                     .update(ACCOUNT)
-                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(trReq.amount))
+                    .set(ACCOUNT.BALANCE, ACCOUNT.BALANCE.plus(Money.toBigDecimal(trReq.amount)))
                     .where(ACCOUNT.ID.eq(trReq.toAcc))
                     .execute();
             System.out.println(thread + " " + System.currentTimeMillis() + " : after updated to = " +
@@ -1,11 +1,19 @@
 package server;
 
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.jupiter.api.*;
 
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class GeneralApiServerTest {
     private static final TestEnv TEST_ENV = new TestEnv();
@@ -20,11 +28,6 @@ public class GeneralApiServerTest {
         TEST_ENV.setUp();
     }
 
-    @AfterEach
-    void tearDown() throws Exception {
-        TEST_ENV.tearDown();
-    }
-
     @AfterAll
     static void tearDownAll() throws Exception {
         TEST_ENV.tearDownAll();
@@ -37,6 +40,41 @@ public class GeneralApiServerTest {
         assertEquals(HttpStatus.NOT_FOUND_404, res.getStatus());
     }
 
+    @Test
+    void testLargeResponse_WhenGzipAccepted_ReturnCompressedBody() throws Exception {
+        createAccounts(30);
+
+        ContentResponse res = TEST_ENV.httpClient().newRequest("http://localhost:4567/accounts")
+                .header(HttpHeader.ACCEPT_ENCODING, "gzip").send();
+
+        assertEquals("gzip", res.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+        assertTrue(res.getContentAsString().startsWith("[{\"id\":1,"));
+    }
+
+    @Test
+    void testLargeResponse_WhenGzipNotAccepted_ReturnPlainBody() throws Exception {
+        createAccounts(30);
+
+        //Jetty client always asks for gzip, so a plain connection is used here
+        HttpURLConnection con = (HttpURLConnection) new URL("http://localhost:4567/accounts").openConnection();
+
+        try (InputStream in = con.getInputStream()) {
+            assertNull(con.getHeaderField("Content-Encoding"));
+            assertEquals('[', in.read());
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    @Test
+    void testSmallResponse_WhenGzipAccepted_ReturnPlainBody() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().newRequest("http://localhost:4567/accounts/1")
+                .header(HttpHeader.ACCEPT_ENCODING, "gzip").send();
+
+        assertNull(res.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":300.00}", res.getContentAsString());
+    }
+
     @Test
     void testUnknownHttpMethodRequestReturnNotFoundHttpError() throws Exception {
         ContentResponse res = TEST_ENV.httpClient()
@@ -44,4 +82,28 @@ public class GeneralApiServerTest {
 
         assertEquals(HttpStatus.NOT_FOUND_404, res.getStatus());
     }
+
+    @Test
+    void testMetrics_WhenRequestsServed_ReturnRouteCountersAndLatencies() throws Exception {
+        TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1");
+        TEST_ENV.httpClient().GET("http://localhost:4567/accounts/99999");
+        TEST_ENV.httpClient().GET("http://localhost:4567/xxxyyyzzz");
+
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/metrics");
+        String metrics = res.getContentAsString();
+
+        assertEquals(HttpStatus.OK_200, res.getStatus());
+        assertTrue(res.getMediaType().startsWith("text/plain"));
+        assertTrue(metrics.contains("# TYPE http_requests_total counter\n"));
+        assertTrue(metrics.contains("http_requests_total{route=\"GET /accounts/:id\",status=\"200\"} "));
+        assertTrue(metrics.contains("http_requests_total{route=\"GET /accounts/:id\",status=\"404\"} "));
+        assertTrue(metrics.contains("http_requests_total{route=\"unmatched\",status=\"404\"} "));
+        assertTrue(metrics.contains("http_request_micros_bucket{route=\"GET /accounts/:id\",le=\"+Inf\"} "));
+    }
+
+    private void createAccounts(int count) throws Exception {
+        for (int i = 0; i < count; i++)
+            TEST_ENV.httpClient().POST("http://localhost:4567/accounts")
+                    .content(new StringContentProvider("{\"number\":\"account" + i + "\", \"balance\":700}")).send();
+    }
 }
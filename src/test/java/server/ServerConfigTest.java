@@ -0,0 +1,18 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServerConfigTest {
+    @Test
+    void testValidate_WhenProjectionWithoutScheduler_ThrowIllegalArgumentEx() {
+        ServerConfig config = new ServerConfig();
+        config.balanceProjection = true;
+
+        assertThrows(IllegalArgumentException.class, config::validate);
+
+        config.transferLockStripes = 1024;
+        config.validate();
+    }
+}
@@ -1,12 +1,15 @@
 package server;
 
+import db.DatabaseConfig;
+import db.DatabaseImage;
 import db.MemoryDatabase;
 import org.eclipse.jetty.client.HttpClient;
 import org.jooq.DSLContext;
 import spark.Spark;
 
 public class TestEnv {
-    private final TestMemoryDatabaseWrapper db = new TestMemoryDatabaseWrapper();
+    private final DatabaseConfig config = new DatabaseConfig();
+    private final TestMemoryDatabaseWrapper db = new TestMemoryDatabaseWrapper(new MemoryDatabase(config));
     private final RestApiServer restServer = new RestApiServer(db);
     private final HttpClient httpClient = new HttpClient();
 
@@ -17,16 +20,16 @@ public class TestEnv {
         Spark.awaitInitialization();
     }
 
+    /**
+     * Resets the database to the seed data in place, which is much cheaper than opening a new database per test.
+     */
     public void setUp() throws Exception {
-        db.wrap(new MemoryDatabase());
-    }
-
-    public void tearDown() throws Exception {
-        db.shutdown();
+        DatabaseImage.resource(config.image).restore(db);
     }
 
     public void tearDownAll() throws Exception {
         httpClient.stop();
+        db.shutdown();
 
         Spark.stop();
         //Wait, until Spark server is fully stopped
@@ -3,12 +3,15 @@ package server;
 import com.google.gson.Gson;
 import model.ErrorMessage;
 import model.Transfer;
+import model.TransferResult;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.jupiter.api.*;
 
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -25,11 +28,6 @@ public class TransfersApiTest {
         TEST_ENV.setUp();
     }
 
-    @AfterEach
-    void tearDown() throws Exception {
-        TEST_ENV.tearDown();
-    }
-
     @AfterAll
     static void tearDownAll() throws Exception {
         TEST_ENV.tearDownAll();
@@ -56,6 +54,45 @@ public class TransfersApiTest {
         assertTrue(trs[1].timestamp.compareTo(trs[2].timestamp) >= 0);
     }
 
+    @Test
+    void testGetTransfers_WhenLimit_ReturnFirstPageAndNextPageLink() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/transfers?limit=2");
+        Transfer[] trs = new Gson().fromJson(res.getContentAsString(), Transfer[].class);
+
+        assertEquals(2, trs.length);
+        assertEquals(3, trs[0].id);
+        assertEquals(2, trs[1].id);
+        assertEquals("</transfers?after=2&limit=2>; rel=\"next\"", res.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetTransfers_WhenAfter_ReturnNextPage() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/transfers?after=2&limit=2");
+        Transfer[] trs = new Gson().fromJson(res.getContentAsString(), Transfer[].class);
+
+        assertEquals(1, trs.length);
+        assertEquals(1, trs[0].id);
+        assertEquals(null, res.getHeaders().get("Link"));
+    }
+
+    @Test
+    void testGetTransfers_WhenLimitTooLarge_ReturnValidationError() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/transfers?limit=1000000");
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, res.getStatus());
+    }
+
+    @Test
+    void testGetTransfers_WhenStreamed_ReturnAllTransfers() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/transfers?stream=true");
+
+        assertEquals(
+                "[{\"id\":3,\"timestamp\":\"Oct 11, 2017 1:00:00 PM\",\"fromAcc\":{\"id\":2,\"number\":\"acc2\"},\"toAcc\":{\"id\":3,\"number\":\"acc3\"},\"amount\":50.00}," +
+                        "{\"id\":2,\"timestamp\":\"Oct 9, 2017 12:00:00 PM\",\"fromAcc\":{\"id\":2,\"number\":\"acc2\"},\"toAcc\":{\"id\":3,\"number\":\"acc3\"},\"amount\":200.00}," +
+                        "{\"id\":1,\"timestamp\":\"Oct 8, 2017 11:00:00 AM\",\"fromAcc\":{\"id\":1,\"number\":\"acc1\"},\"toAcc\":{\"id\":2,\"number\":\"acc2\"},\"amount\":100.00}]",
+                res.getContentAsString());
+    }
+
     @Test
     void testGetTransferById_ReturnTransferWithSameId() throws Exception {
         ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/transfers/2");
@@ -214,4 +251,168 @@ public class TransfersApiTest {
         assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, req.send().getStatus());
         assertEquals("Validation error", e.msg);
     }
+
+    @Test
+    void testRequestTransfer_WhenMalformedJson_ReturnBadRequest() throws Exception {
+        Request req = TEST_ENV.httpClient().POST("http://localhost:4567/transfers");
+        req.content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":"));
+        ContentResponse res = req.send();
+
+        ErrorMessage e = new Gson().fromJson(res.getContentAsString(), ErrorMessage.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST_400, res.getStatus());
+        assertEquals("Malformed request", e.msg);
+    }
+
+    @Test
+    void testRequestTransfer_WhenAmountNotNumber_ReturnBadRequest() throws Exception {
+        Request req = TEST_ENV.httpClient().POST("http://localhost:4567/transfers");
+        req.content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":\"ten\"}"));
+        ContentResponse res = req.send();
+
+        ErrorMessage e = new Gson().fromJson(res.getContentAsString(), ErrorMessage.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST_400, res.getStatus());
+        assertEquals("Malformed request", e.msg);
+    }
+
+    @Test
+    void testRequestTransfer_WhenIdempotencyKeyRepeated_TransferOnce() throws Exception {
+        String key = UUID.randomUUID().toString();
+
+        ContentResponse first = TEST_ENV.httpClient().POST("http://localhost:4567/transfers")
+                .header("Idempotency-Key", key)
+                .content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}")).send();
+        ContentResponse second = TEST_ENV.httpClient().POST("http://localhost:4567/transfers")
+                .header("Idempotency-Key", key)
+                .content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}")).send();
+
+        assertEquals(HttpStatus.CREATED_201, second.getStatus());
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+
+        ContentResponse res = TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1");
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":200.00}", res.getContentAsString());
+    }
+
+    @Test
+    void testRequestTransfer_WhenIdempotencyKeyReusedForOtherTransfer_ReturnValidationError() throws Exception {
+        String key = UUID.randomUUID().toString();
+
+        TEST_ENV.httpClient().POST("http://localhost:4567/transfers")
+                .header("Idempotency-Key", key)
+                .content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}")).send();
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers")
+                .header("Idempotency-Key", key)
+                .content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":50}")).send();
+
+        Gson gson = new Gson();
+        ErrorMessage e = gson.fromJson(res.getContentAsString(), ErrorMessage.class);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, res.getStatus());
+        assertEquals("Validation error", e.msg);
+    }
+
+    @Test
+    void testRequestTransferBatch_ReturnResultOfEachTransferInRequestOrder() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch")
+                .content(new StringContentProvider("[{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}," +
+                        "{\"fromAcc\":1,\"toAcc\":1,\"amount\":10}," +
+                        "{\"fromAcc\":1,\"toAcc\":3,\"amount\":500}," +
+                        "{\"fromAcc\":2,\"toAcc\":3,\"amount\":50}]")).send();
+
+        TransferResult[] results = new Gson().fromJson(res.getContentAsString(), TransferResult[].class);
+
+        assertEquals(HttpStatus.OK_200, res.getStatus());
+        assertEquals(4, results.length);
+        for (int i = 0; i < results.length; i++)
+            assertEquals(i, results[i].index);
+
+        assertEquals(HttpStatus.CREATED_201, results[0].status);
+        assertEquals(100, results[0].transfer.amount.intValue());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, results[1].status);
+        assertEquals("Validation error", results[1].error.msg);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR_500, results[2].status);
+        assertEquals("Data access error", results[2].error.msg);
+        assertEquals(HttpStatus.CREATED_201, results[3].status);
+
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":200.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1").getContentAsString());
+        assertEquals("{\"id\":3,\"number\":\"acc3\",\"balance\":1050.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/3").getContentAsString());
+    }
+
+    @Test
+    void testRequestTransferBatch_WhenMalformedTransfer_EndResultsWithMalformedRequestError() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch")
+                .content(new StringContentProvider("[{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}," +
+                        "{\"fromAcc\":1,\"toAcc\":}," +
+                        "{\"fromAcc\":2,\"toAcc\":3,\"amount\":50}]")).send();
+
+        TransferResult[] results = new Gson().fromJson(res.getContentAsString(), TransferResult[].class);
+
+        assertEquals(2, results.length);
+        assertEquals(HttpStatus.CREATED_201, results[0].status);
+        assertEquals(1, results[1].index);
+        assertEquals(HttpStatus.BAD_REQUEST_400, results[1].status);
+        assertEquals("Malformed request", results[1].error.msg);
+
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":200.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1").getContentAsString());
+        assertEquals("{\"id\":3,\"number\":\"acc3\",\"balance\":1000.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/3").getContentAsString());
+    }
+
+    @Test
+    void testRequestTransferBatch_WhenAtomicAndMalformedTransfer_ReturnBadRequest() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch?atomic=true")
+                .content(new StringContentProvider("[{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}," +
+                        "{\"fromAcc\":1,\"toAcc\":3,\"amount\":\"ten\"}]")).send();
+
+        ErrorMessage e = new Gson().fromJson(res.getContentAsString(), ErrorMessage.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST_400, res.getStatus());
+        assertEquals("Malformed request", e.msg);
+
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":300.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1").getContentAsString());
+    }
+
+    @Test
+    void testRequestTransferBatch_WhenBodyNotArray_ReturnBadRequest() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch")
+                .content(new StringContentProvider("{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}")).send();
+
+        assertEquals(HttpStatus.BAD_REQUEST_400, res.getStatus());
+    }
+
+    @Test
+    void testRequestTransferBatch_WhenAtomicAndTransferFails_MakeNoTransfer() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch?atomic=true")
+                .content(new StringContentProvider("[{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}," +
+                        "{\"fromAcc\":1,\"toAcc\":3,\"amount\":500}]")).send();
+
+        TransferResult[] results = new Gson().fromJson(res.getContentAsString(), TransferResult[].class);
+
+        assertEquals(HttpStatus.CONFLICT_409, results[0].status);
+        assertEquals("Batch aborted", results[0].error.msg);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR_500, results[1].status);
+
+        assertEquals("{\"id\":1,\"number\":\"acc1\",\"balance\":300.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/1").getContentAsString());
+    }
+
+    @Test
+    void testRequestTransferBatch_WhenAtomic_MakeAllTransfers() throws Exception {
+        ContentResponse res = TEST_ENV.httpClient().POST("http://localhost:4567/transfers/batch?atomic=true")
+                .content(new StringContentProvider("[{\"fromAcc\":1,\"toAcc\":2,\"amount\":100}," +
+                        "{\"fromAcc\":2,\"toAcc\":3,\"amount\":500}]")).send();
+
+        TransferResult[] results = new Gson().fromJson(res.getContentAsString(), TransferResult[].class);
+
+        assertEquals(HttpStatus.CREATED_201, results[0].status);
+        assertEquals(HttpStatus.CREATED_201, results[1].status);
+
+        assertEquals("{\"id\":2,\"number\":\"acc2\",\"balance\":0.00}",
+                TEST_ENV.httpClient().GET("http://localhost:4567/accounts/2").getContentAsString());
+    }
 }
@@ -0,0 +1,64 @@
+package server.handlers;
+
+import org.junit.jupiter.api.Test;
+import spark.Route;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkheadTest {
+    @Test
+    void testWrap_WhenSlotsAndQueueTaken_RejectRequest() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, 1000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Route slow = bulkhead.wrap((request, response) -> {
+            started.countDown();
+            release.await();
+            return "slow";
+        });
+        Route fast = bulkhead.wrap((request, response) -> "fast");
+
+        CompletableFuture<Object> inProgress = CompletableFuture.supplyAsync(() -> handle(slow));
+        started.await();
+
+        assertThrows(Bulkhead.RejectedException.class, () -> fast.handle(null, null));
+
+        release.countDown();
+        assertEquals("slow", inProgress.get());
+        assertEquals("fast", fast.handle(null, null));
+    }
+
+    @Test
+    void testWrap_WhenSlotNotFreedInTime_RejectQueuedRequest() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Route slow = bulkhead.wrap((request, response) -> {
+            started.countDown();
+            release.await();
+            return "slow";
+        });
+
+        CompletableFuture<Object> inProgress = CompletableFuture.supplyAsync(() -> handle(slow));
+        started.await();
+
+        assertThrows(Bulkhead.RejectedException.class, () -> bulkhead.wrap((request, response) -> "fast").handle(null, null));
+
+        release.countDown();
+        inProgress.get();
+    }
+
+    private static Object handle(Route route) {
+        try {
+            return route.handle(null, null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package server.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogRateLimiterTest {
+    @Test
+    void testTryAcquire_WhenLimitReached_SkipMessagesAndReportThemWithNextOne() throws Exception {
+        LogRateLimiter limiter = new LogRateLimiter(2);
+
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(-1, limiter.tryAcquire());
+        assertEquals(-1, limiter.tryAcquire());
+
+        Thread.sleep(1100);
+
+        assertEquals(2, limiter.tryAcquire());
+    }
+}
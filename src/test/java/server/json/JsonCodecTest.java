@@ -0,0 +1,82 @@
+package server.json;
+
+import com.google.gson.Gson;
+import model.Account;
+import model.AccountCreation;
+import model.ErrorMessage;
+import model.Transfer;
+import model.TransferRequest;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonCodecTest {
+    private final Gson reflective = new Gson();
+
+    @Test
+    void testToJson_WhenTransfers_ReturnSameJsonAsReflectiveGson() {
+        Transfer t = new Transfer();
+        t.id = 7;
+        t.timestamp = new Date(1507460400000L);
+        t.amount = new BigDecimal("100.50");
+        t.fromAcc = new Account();
+        t.fromAcc.id = 1;
+        t.fromAcc.number = "acc<1>";
+        t.toAcc = new Account();
+        t.toAcc.id = 2;
+
+        Transfer empty = new Transfer();
+
+        assertEquals(reflective.toJson(Arrays.asList(t, empty)), JsonCodec.gson().toJson(Arrays.asList(t, empty)));
+    }
+
+    @Test
+    void testToJson_WhenAccountAndError_ReturnSameJsonAsReflectiveGson() {
+        Account acc = new Account();
+        acc.id = 3;
+        acc.number = "acc3";
+        acc.balance = new BigDecimal("1E+3");
+
+        assertEquals(reflective.toJson(acc), JsonCodec.gson().toJson(acc));
+        assertEquals(reflective.toJson(new ErrorMessage("Validation error")),
+                JsonCodec.gson().toJson(new ErrorMessage("Validation error")));
+        assertEquals(reflective.toJson(new ErrorMessage("Data access error", "\"quoted\"")),
+                JsonCodec.gson().toJson(new ErrorMessage("Data access error", "\"quoted\"")));
+    }
+
+    @Test
+    void testFromJson_WhenRequests_ReturnParsedFields() {
+        TransferRequest trReq = JsonCodec.gson().fromJson(
+                "{\"fromAcc\":1, \"unknown\":{\"a\":[1]}, \"toAcc\":\"2\", \"amount\":100.005}", TransferRequest.class);
+
+        assertEquals(1, trReq.fromAcc);
+        assertEquals(2, trReq.toAcc);
+        assertEquals(10000, trReq.amount);
+
+        AccountCreation acc = JsonCodec.gson().fromJson("{\"number\":\"acc1\", \"balance\":null}", AccountCreation.class);
+
+        assertEquals("acc1", acc.number);
+        assertNull(acc.balance);
+    }
+
+    @Test
+    void testFromJson_WhenTransferJson_ReturnSameTransfer() {
+        Transfer t = new Transfer();
+        t.id = 7;
+        t.timestamp = new Date(1507460400000L);
+        t.amount = new BigDecimal("100.50");
+        t.fromAcc = new Account();
+        t.fromAcc.id = 1;
+        t.toAcc = new Account();
+        t.toAcc.id = 2;
+
+        Transfer parsed = JsonCodec.gson().fromJson(JsonCodec.gson().toJson(t), Transfer.class);
+
+        assertEquals(reflective.toJson(t), reflective.toJson(parsed));
+    }
+}
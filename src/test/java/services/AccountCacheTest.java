@@ -0,0 +1,116 @@
+package services;
+
+import db.MemoryDatabase;
+import model.Account;
+import model.Money;
+import model.TransferRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AccountCacheTest {
+    private MemoryDatabase db;
+
+    @BeforeEach
+    void setUp() {
+        db = new MemoryDatabase();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Test
+    void testGet_WhenCached_LoadOnce() {
+        AccountCache cache = new AccountCache(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1, id -> load(id, "300", loads));
+        Account acc = cache.get(1, id -> load(id, "300", loads));
+
+        assertEquals(1, loads.get());
+        assertEquals(new BigDecimal("300"), acc.balance);
+    }
+
+    @Test
+    void testGet_WhenCapacityExceeded_EvictLeastRecentlyUsed() {
+        AccountCache cache = new AccountCache(2);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1, id -> load(id, "1", loads));
+        cache.get(2, id -> load(id, "2", loads));
+        cache.get(1, id -> load(id, "1", loads));
+        cache.get(3, id -> load(id, "3", loads));
+        cache.get(2, id -> load(id, "2", loads));
+
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testGet_WhenSegmentsExceeded_KeepLatestAccountsOfEachSegment() {
+        AccountCache cache = new AccountCache(256);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (long id = 1; id <= 1000; id++)
+            cache.get(id, i -> load(i, "1", loads));
+        for (long id = 745; id <= 1000; id++)
+            cache.get(id, i -> load(i, "1", loads));
+
+        assertEquals(1000, loads.get());
+        assertEquals(256, cache.size());
+    }
+
+    @Test
+    void testGet_WhenWriteDuringLoad_DoNotCacheLoadedAccount() {
+        AccountCache cache = new AccountCache(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1, id -> {
+            Account acc = load(id, "300", loads);
+            cache.invalidate(id);
+
+            return acc;
+        });
+        cache.get(1, id -> load(id, "200", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGetAccount_WhenTransferCommitted_ReturnNewBalance() {
+        AccountCache cache = new AccountCache(10);
+        DbAccountsService accounts = new DbAccountsService(db, cache);
+        DbTransfersConfig config = new DbTransfersConfig();
+        config.cache = cache;
+        DbTransfersService transfers = new DbTransfersService(db, config);
+
+        assertEquals(new BigDecimal("300.00"), accounts.getAccount(1).balance);
+        assertEquals(new BigDecimal("400.00"), accounts.getAccount(2).balance);
+
+        TransferRequest trReq = new TransferRequest();
+        trReq.fromAcc = 1;
+        trReq.toAcc = 2;
+        trReq.amount = Money.parse("100");
+        transfers.transferAmount(trReq);
+
+        assertEquals(new BigDecimal("200.00"), accounts.getAccount(1).balance);
+        assertEquals(new BigDecimal("500.00"), accounts.getAccount(2).balance);
+    }
+
+    private static Account load(long id, String balance, AtomicInteger loads) {
+        loads.incrementAndGet();
+
+        Account acc = new Account();
+        acc.id = id;
+        acc.balance = new BigDecimal(balance);
+
+        return acc;
+    }
+}
@@ -0,0 +1,112 @@
+package services;
+
+import db.MemoryDatabase;
+import model.Account;
+import model.AccountCreation;
+import model.Transfer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static services.Fixtures.request;
+
+class BalanceProjectionTest {
+    private MemoryDatabase db;
+    private BalanceProjection projection;
+
+    @BeforeEach
+    void setUp() {
+        db = new MemoryDatabase();
+        projection = BalanceProjection.load(new DbAccountsService(db));
+    }
+
+    @AfterEach
+    void tearDown() {
+        projection.close();
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Test
+    void testTransferred_WhenApplied_PublishNewSnapshotKeepingOldOne() throws Exception {
+        BalanceProjection.Snapshot loaded = projection.snapshot();
+
+        projection.transferred(transfer(1, 2, "100.00"));
+        projection.transferred(transfer(2, 3, "50.00"));
+        BalanceProjection.Snapshot applied = await(2);
+
+        assertEquals(0, loaded.version);
+        assertEquals(new BigDecimal("300.00"), loaded.account(1).balance);
+        assertEquals(new BigDecimal("200.00"), applied.account(1).balance);
+        assertEquals(new BigDecimal("450.00"), applied.account(2).balance);
+        assertEquals(new BigDecimal("1050.00"), applied.account(3).balance);
+    }
+
+    @Test
+    void testTransferred_WhenAccountCreationNotApplied_HoldBackUntilApplied() throws Exception {
+        projection.transferred(transfer(1, 7, "100.00"));
+        assertEquals(null, await(1).account(7));
+
+        Account created = new Account();
+        created.id = 7;
+        created.number = "7";
+        created.balance = new BigDecimal("5");
+        projection.created(created);
+
+        BalanceProjection.Snapshot snapshot = await(2);
+        assertEquals(new BigDecimal("105.00"), snapshot.account(7).balance);
+        assertEquals(Arrays.asList(2L, 3L, 7L), ids(snapshot.accounts(1, 10)));
+    }
+
+    @Test
+    void testGetAccount_WhenServedFromProjection_SeeCommittedTransfersAndNewAccounts() throws Exception {
+        AccountsService accounts = new ProjectedAccountsService(new DbAccountsService(db), projection);
+        DbTransfersConfig config = new DbTransfersConfig();
+        config.scheduler = new TransferScheduler(16);
+        config.projection = projection;
+        TransfersService transfers = new DbTransfersService(db, config);
+
+        AccountCreation creation = new AccountCreation();
+        creation.number = "4";
+        creation.balance = new BigDecimal("10");
+        long accId = accounts.createAccount(creation).id;
+        assertEquals(new BigDecimal("10.00"), accounts.getAccount(accId).balance);
+
+        transfers.transferAmounts(Arrays.asList(request(1, accId, "100"), request(accId, 2, "500")), false);
+        await(2);
+
+        assertEquals(2, accounts.balancesVersion());
+        assertEquals(new BigDecimal("200.00"), accounts.getAccount(1).balance);
+        assertEquals(new BigDecimal("110.00"), accounts.getAccount(accId).balance);
+        assertEquals(Arrays.asList(1L, 2L, 3L, accId), ids(accounts.getAllAccounts()));
+    }
+
+    private BalanceProjection.Snapshot await(long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (projection.snapshot().version < version && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+
+        assertEquals(version, projection.snapshot().version);
+
+        return projection.snapshot();
+    }
+
+    private static List<Long> ids(List<Account> accounts) {
+        return Arrays.asList(accounts.stream().map(acc -> acc.id).toArray(Long[]::new));
+    }
+
+    private static Transfer transfer(long from, long to, String amount) {
+        Transfer t = new Transfer();
+        t.fromAcc = new Account();
+        t.fromAcc.id = from;
+        t.toAcc = new Account();
+        t.toAcc.id = to;
+        t.amount = new BigDecimal(amount);
+
+        return t;
+    }
+}
@@ -0,0 +1,99 @@
+package services;
+
+import db.DatabaseConfig;
+import db.MemoryDatabase;
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static services.Fixtures.balance;
+import static services.Fixtures.request;
+
+class BalanceStripesTest {
+    private MemoryDatabase db;
+    private BalanceStripes stripes;
+
+    private DbAccountsService accounts;
+    private DbTransfersService transfers;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig config = new DatabaseConfig();
+        config.transactionControl = DatabaseConfig.TransactionControl.MVCC;
+        db = new MemoryDatabase(config);
+
+        stripes = BalanceStripes.load(db, 4);
+        stripes.stripe(db, 3);
+
+        accounts = new DbAccountsService(db, AccountCache.disabled(), stripes);
+        DbTransfersConfig transfersConfig = new DbTransfersConfig();
+        transfersConfig.stripes = stripes;
+        transfers = new DbTransfersService(db, transfersConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Test
+    void testTransferAmount_WhenStripedRecipient_BalanceIsSumOfStripes() {
+        transfers.transferAmount(request(1, 3, "100"));
+        transfers.transferAmount(request(2, 3, "150"));
+
+        assertEquals(new BigDecimal("1250.00"), accounts.getAccount(3).balance);
+        assertEquals(new BigDecimal("1000.00"), balance(db, 3));
+        assertEquals(new BigDecimal("1250.00"), accounts.getAllAccounts().get(2).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenStripedSenderRunsShort_BorrowFromStripes() {
+        transfers.transferAmount(request(1, 3, "300"));
+        transfers.transferAmount(request(3, 2, "1200"));
+
+        assertEquals(new BigDecimal("100.00"), accounts.getAccount(3).balance);
+        assertEquals(new BigDecimal("1600.00"), accounts.getAccount(2).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenStripedSenderOverdrawn_ThrowDataAccessEx() {
+        transfers.transferAmount(request(1, 3, "300"));
+
+        assertThrows(DataAccessException.class, () -> transfers.transferAmount(request(3, 2, "1300.01")));
+        assertEquals(new BigDecimal("1300.00"), accounts.getAccount(3).balance);
+        assertEquals(new BigDecimal("400.00"), accounts.getAccount(2).balance);
+    }
+
+    @Test
+    void testTransferAmount_WhenConcurrentCreditsAndDebits_KeepTotalBalance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long from = i % 4 == 0 ? 3 : 1 + i % 2;
+            long to = from == 3 ? 1 : 3;
+            results.add(executor.submit(() -> transfers.transferAmount(request(from, to, "1"))));
+        }
+
+        for (Future<?> result : results)
+            result.get();
+
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (long accId = 1; accId <= 3; accId++)
+            total = total.add(accounts.getAccount(accId).balance);
+
+        assertEquals(new BigDecimal("1700.00"), total);
+    }
+}
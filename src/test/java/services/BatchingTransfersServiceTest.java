@@ -0,0 +1,82 @@
+package services;
+
+import db.MemoryDatabase;
+import model.Transfer;
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static services.Fixtures.balance;
+import static services.Fixtures.request;
+
+class BatchingTransfersServiceTest {
+    private MemoryDatabase db;
+    private BatchingTransfersService service;
+
+    @BeforeEach
+    void setUp() {
+        db = new MemoryDatabase();
+        service = new BatchingTransfersService(db, 64, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Test
+    void testTransferAmount_ReturnFulfilledTransferRecord() {
+        Transfer t = service.transferAmount(request(1, 2, "100"));
+
+        assertEquals(4, t.id);
+        assertEquals("acc1", t.fromAcc.number);
+        assertEquals("acc2", t.toAcc.number);
+        assertEquals(new BigDecimal("100.00"), t.amount);
+        assertEquals(t.id, service.getTransfer(t.id).id);
+    }
+
+    @Test
+    void testTransferAmount_WhenClosed_ThrowIllegalStateEx() {
+        service.close();
+
+        assertThrows(IllegalStateException.class, () -> service.transferAmount(request(1, 2, "100")));
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+    }
+
+    @Test
+    void testConcurrentTransfers_AllAppliedInBatches() {
+        List<CompletableFuture<Transfer>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            results.add(CompletableFuture.supplyAsync(() -> service.transferAmount(request(3, 1, "10"))));
+
+        results.forEach(CompletableFuture::join);
+
+        assertEquals(new BigDecimal("500.00"), balance(db, 1));
+        assertEquals(new BigDecimal("800.00"), balance(db, 3));
+    }
+
+    @Test
+    void testConcurrentTransfers_WhenOneHasInsufficientBalance_OnlyItFails() {
+        CompletableFuture<Transfer> failed = CompletableFuture.supplyAsync(() -> service.transferAmount(request(1, 2, "400")));
+        CompletableFuture<Transfer> succeeded = CompletableFuture.supplyAsync(() -> service.transferAmount(request(3, 2, "100")));
+
+        CompletionException e = assertThrows(CompletionException.class, failed::join);
+        assertTrue(e.getCause() instanceof DataAccessException);
+        succeeded.join();
+
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+        assertEquals(new BigDecimal("500.00"), balance(db, 2));
+        assertEquals(new BigDecimal("900.00"), balance(db, 3));
+    }
+}
@@ -0,0 +1,203 @@
+package services;
+
+import db.DatabaseConfig;
+import db.MemoryDatabase;
+import metrics.Metrics;
+import model.Transfer;
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static services.Fixtures.balance;
+import static services.Fixtures.request;
+
+class DbTransfersServiceTest {
+    private MemoryDatabase db;
+
+    @BeforeEach
+    void setUp() {
+        db = new MemoryDatabase();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.ctx().execute("SHUTDOWN");
+    }
+
+    @Test
+    void testTransferAmount_FastAndClassicModesReturnSameTransfer() {
+        Transfer fast = service(DbTransfersService.Mode.FAST).transferAmount(request(1, 2, "100"));
+        Transfer classic = service(DbTransfersService.Mode.CLASSIC).transferAmount(request(1, 2, "100"));
+
+        assertEquals(classic.id - 1, fast.id);
+        assertEquals(classic.amount, fast.amount);
+        assertEquals(classic.fromAcc.id, fast.fromAcc.id);
+        assertEquals(classic.fromAcc.number, fast.fromAcc.number);
+        assertEquals(classic.toAcc.id, fast.toAcc.id);
+        assertEquals(classic.toAcc.number, fast.toAcc.number);
+        assertEquals(classic.timestamp.getClass(), fast.timestamp.getClass());
+
+        assertEquals(new BigDecimal("100.00"), fast.amount);
+        assertEquals(new BigDecimal("100.00"), balance(db, 1));
+        assertEquals(new BigDecimal("600.00"), balance(db, 2));
+    }
+
+    @Test
+    void testTransferAmount_WhenFastModeAndUnknownRecipient_ThrowDataAccessEx() {
+        DbTransfersService service = service(DbTransfersService.Mode.FAST);
+
+        assertThrows(DataAccessException.class, () -> service.transferAmount(request(1, 902, "100")));
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+    }
+
+    @Test
+    void testTransferAmount_WhenFastModeAndInsufficientBalance_ThrowDataAccessEx() {
+        DbTransfersService service = service(DbTransfersService.Mode.FAST);
+
+        assertThrows(DataAccessException.class, () -> service.transferAmount(request(1, 2, "400")));
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+        assertEquals(new BigDecimal("400.00"), balance(db, 2));
+    }
+
+    @Test
+    void testTransferAmount_WhenMvccAndConcurrentOppositeTransfers_KeepTotalBalance() throws Exception {
+        DatabaseConfig config = new DatabaseConfig();
+        config.transactionControl = DatabaseConfig.TransactionControl.MVCC;
+        db.ctx().execute("SHUTDOWN");
+        db = new MemoryDatabase(config);
+
+        DbTransfersService service = service(DbTransfersService.Mode.CLASSIC);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<Transfer>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long from = i % 2 == 0 ? 1 : 2;
+            results.add(executor.submit(() -> service.transferAmount(request(from, 3 - from, "1"))));
+        }
+
+        for (Future<Transfer> result : results)
+            result.get();
+
+        executor.shutdown();
+
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+        assertEquals(new BigDecimal("400.00"), balance(db, 2));
+    }
+
+    @Test
+    void testTransferAmount_WhenMvccAndScheduledOppositeTransfers_NoConflictRollbacks() throws Exception {
+        DatabaseConfig config = new DatabaseConfig();
+        config.transactionControl = DatabaseConfig.TransactionControl.MVCC;
+        db.ctx().execute("SHUTDOWN");
+        db = new MemoryDatabase(config);
+
+        DbTransfersConfig transfersConfig = new DbTransfersConfig();
+        transfersConfig.mode = DbTransfersService.Mode.CLASSIC;
+        transfersConfig.scheduler = new TransferScheduler(64);
+        DbTransfersService service = new DbTransfersService(db, transfersConfig);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long retriesBefore = Metrics.counter("db_conflict_retries").get();
+
+        List<Future<Transfer>> results = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            long from = i % 2 == 0 ? 1 : 2;
+            results.add(executor.submit(() -> service.transferAmount(request(from, 3 - from, "1"))));
+        }
+
+        for (Future<Transfer> result : results)
+            result.get();
+
+        executor.shutdown();
+
+        assertEquals(retriesBefore, Metrics.counter("db_conflict_retries").get());
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+        assertEquals(new BigDecimal("400.00"), balance(db, 2));
+    }
+
+    @Test
+    void testTransferAmount_WhenIdempotencyKeyStored_ReturnStoredTransfer() {
+        Transfer first = new DbTransfersService(db).transferAmount(request(1, 2, "100"), "key-1");
+        Transfer second = new DbTransfersService(db).transferAmount(request(1, 2, "100"), "key-1");
+
+        assertEquals(first.id, second.id);
+        assertEquals(first.amount, second.amount);
+        assertEquals(new BigDecimal("200.00"), balance(db, 1));
+    }
+
+    @Test
+    void testTransferAmount_WhenStatementsPrepared_NoRendersOrPreparesAfterwards() {
+        DbTransfersService fast = service(DbTransfersService.Mode.FAST);
+        DbTransfersService classic = service(DbTransfersService.Mode.CLASSIC);
+        fast.transferAmount(request(1, 2, "10"));
+        classic.getTransfer(classic.transferAmount(request(1, 2, "10")).id);
+
+        long rendered = Metrics.counter("db_queries_rendered").get();
+        long prepared = Metrics.counter("db_statements_prepared").get();
+
+        fast.transferAmount(request(2, 1, "10"));
+        Transfer t = classic.transferAmount(request(2, 1, "10"));
+
+        assertEquals(t.id, classic.getTransfer(t.id).id);
+        assertEquals(rendered, Metrics.counter("db_queries_rendered").get());
+        assertEquals(prepared, Metrics.counter("db_statements_prepared").get());
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+    }
+
+    @Test
+    void testTransferAmounts_WhenAtomicAndOneFails_AbortOthers() {
+        List<TransferBatchItem> items = new DbTransfersService(db).transferAmounts(
+                Arrays.asList(request(1, 2, "100"), request(1, 3, "500")), true);
+
+        assertEquals(BatchAbortedException.class, items.get(0).error.getClass());
+        assertEquals(DataAccessException.class, items.get(1).error.getClass());
+        assertEquals(null, items.get(0).transfer);
+        assertEquals(new BigDecimal("300.00"), balance(db, 1));
+    }
+
+    @Test
+    void testTransferAmounts_WhenBestEffort_MakeTransfersNotFailing() {
+        List<TransferBatchItem> items = new DbTransfersService(db).transferAmounts(
+                Arrays.asList(request(1, 2, "100"), request(1, 3, "500"), request(1, 3, "200")), false);
+
+        assertEquals(new BigDecimal("100.00"), items.get(0).transfer.amount);
+        assertEquals(DataAccessException.class, items.get(1).error.getClass());
+        assertEquals(new BigDecimal("200.00"), items.get(2).transfer.amount);
+        assertEquals(new BigDecimal("0.00"), balance(db, 1));
+        assertEquals(new BigDecimal("1200.00"), balance(db, 3));
+    }
+
+    @Test
+    void testTransferAmounts_WhenSenderStriped_SpendStripedBalance() {
+        BalanceStripes stripes = new BalanceStripes(4);
+        stripes.stripe(db, 2);
+        DbTransfersConfig config = new DbTransfersConfig();
+        config.stripes = stripes;
+        DbTransfersService service = new DbTransfersService(db, config);
+
+        service.transferAmount(request(1, 2, "300"));
+        List<TransferBatchItem> items = service.transferAmounts(Collections.singletonList(request(2, 3, "700")), true);
+
+        assertEquals(null, items.get(0).error);
+        assertEquals(new BigDecimal("0.00"), balance(db, 2));
+        assertEquals(new BigDecimal("1700.00"), balance(db, 3));
+    }
+
+    private DbTransfersService service(DbTransfersService.Mode mode) {
+        DbTransfersConfig config = new DbTransfersConfig();
+        config.mode = mode;
+
+        return new DbTransfersService(db, config);
+    }
+}
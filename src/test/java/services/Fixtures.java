@@ -0,0 +1,33 @@
+package services;
+
+import db.MemoryDatabase;
+import model.Money;
+import model.TransferRequest;
+
+import java.math.BigDecimal;
+
+import static db.tables.Account.ACCOUNT;
+
+/**
+ * Requests and reads shared by the transfer tests.
+ */
+public final class Fixtures {
+    private Fixtures() {
+    }
+
+    public static TransferRequest request(long from, long to, String amount) {
+        TransferRequest trReq = new TransferRequest();
+        trReq.fromAcc = from;
+        trReq.toAcc = to;
+        trReq.amount = Money.parse(amount);
+
+        return trReq;
+    }
+
+    /**
+     * Balance column of the account row, without the stripes of a striped account.
+     */
+    public static BigDecimal balance(MemoryDatabase db, long accId) {
+        return db.ctx().select(ACCOUNT.BALANCE).from(ACCOUNT).where(ACCOUNT.ID.eq(accId)).fetchOne(ACCOUNT.BALANCE);
+    }
+}
@@ -0,0 +1,90 @@
+package services;
+
+import model.Transfer;
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyIndexTest {
+    @Test
+    void testExecute_WhenKeyRepeated_RunTransferOnce() {
+        IdempotencyIndex index = new IdempotencyIndex(10, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+
+        Transfer first = index.execute("k", () -> transfer(runs.incrementAndGet()));
+        Transfer second = index.execute("k", () -> transfer(runs.incrementAndGet()));
+
+        assertSame(first, second);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testExecute_WhenKeyInProgress_WaitForFirstTransfer() throws Exception {
+        IdempotencyIndex index = new IdempotencyIndex(10, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Transfer> first = CompletableFuture.supplyAsync(() -> index.execute("k", () -> {
+            started.countDown();
+            await(release);
+            return transfer(1);
+        }));
+        started.await();
+
+        CompletableFuture<Transfer> second = CompletableFuture.supplyAsync(() -> index.execute("k", () -> transfer(2)));
+        release.countDown();
+
+        assertEquals(1, first.get().id);
+        assertEquals(1, second.get().id);
+    }
+
+    @Test
+    void testExecute_WhenTransferFailed_RunAgain() {
+        IdempotencyIndex index = new IdempotencyIndex(10, 60_000);
+
+        assertThrows(DataAccessException.class, () -> index.execute("k", () -> {
+            throw new DataAccessException("Insufficient balance on account with id: 1");
+        }));
+
+        assertEquals(2, index.execute("k", () -> transfer(2)).id);
+    }
+
+    @Test
+    void testExecute_WhenKeyExpiredOrEvicted_RunAgain() throws Exception {
+        IdempotencyIndex expiring = new IdempotencyIndex(10, 1);
+        expiring.execute("k", () -> transfer(1));
+        Thread.sleep(5);
+
+        assertEquals(2, expiring.execute("k", () -> transfer(2)).id);
+
+        IdempotencyIndex bounded = new IdempotencyIndex(2, 60_000);
+        bounded.execute("k1", () -> transfer(1));
+        bounded.execute("k2", () -> transfer(2));
+        bounded.execute("k3", () -> transfer(3));
+
+        assertEquals(2, bounded.size());
+        assertEquals(4, bounded.execute("k1", () -> transfer(4)).id);
+    }
+
+    private static Transfer transfer(long id) {
+        Transfer t = new Transfer();
+        t.id = id;
+
+        return t;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
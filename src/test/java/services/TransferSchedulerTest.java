@@ -0,0 +1,95 @@
+package services;
+
+import metrics.Counter;
+import metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TransferSchedulerTest {
+    private final Counter waits = Metrics.counter("transfers_scheduler_waits");
+
+    @Test
+    void testCall_WhenOppositeTransferRunning_WaitForIt() throws Exception {
+        TransferScheduler scheduler = new TransferScheduler(16);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<Integer> first = executor.submit(() -> scheduler.call(() -> {
+            running.incrementAndGet();
+            started.countDown();
+            await(release);
+            return running.getAndDecrement();
+        }, 1, 2));
+        started.await();
+
+        long waitsBefore = waits.get();
+        Future<Integer> second = executor.submit(() -> scheduler.call(() -> {
+            running.incrementAndGet();
+            return running.getAndDecrement();
+        }, 2, 1));
+
+        while (waits.get() == waitsBefore)
+            Thread.sleep(1);
+        assertFalse(second.isDone());
+
+        release.countDown();
+
+        assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void testCall_WhenSameStripeTwiceOrNested_DoNotBlock() {
+        TransferScheduler scheduler = new TransferScheduler(4);
+
+        int result = scheduler.call(() -> scheduler.call(() -> 42, 5, 1), 1, 5, 9);
+
+        assertEquals(42, result);
+    }
+
+    @Test
+    void testCall_WhenMoreStripesThanMax_RunWithoutWaiting() throws Exception {
+        TransferScheduler scheduler = new TransferScheduler(16, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<Integer> held = executor.submit(() -> scheduler.call(() -> {
+            started.countDown();
+            await(release);
+            return 1;
+        }, 1, 2));
+        started.await();
+
+        assertEquals(2, (int) scheduler.call(() -> 2, 1, 2, 3));
+
+        release.countDown();
+        assertEquals(1, (int) held.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void testCall_WhenDisabled_RunTransfer() {
+        assertEquals("done", TransferScheduler.disabled().call(() -> "done", 1, 2));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}